@@ -1,45 +1,104 @@
 /**
  * Represents the game board for Tic-Tac-Toe.
  * The board contains cells where players can place their marks (X or O).
+ * The marks of each player are kept in a bitboard, with bit row * size + col set for every cell
+ * holding the player's mark: a single long on boards of up to 8x8, and an array of longs on larger
+ * ones. The board remembers the last mark placed, so a win is checked against precomputed masks of
+ * only the lines through it. The empty cells are kept in a list too, so players can pick a random
+ * empty cell without searching for one.
  */
 public class Board {
     // Default size for the game board if not specified
     private static final int DEFAULT_BOARD_SIZE = 4;
 
+    // Default win streak for the game board if not specified
+    private static final int DEFAULT_WIN_STREAK = 3;
+
     // Size of the game board
     private final int boardSize;
 
-    // 2D array to represent the cells of the game board
-    private Mark[][] board;
+    // Number of marks in a line required to win
+    private final int winStreak;
+
+    // Lines of winStreak cells on the board
+    private final WinLines winLines;
+
+    // Bitboards of the X and O marks, on boards of up to 64 cells
+    private long xBits;
+    private long oBits;
+
+    // Bitboards of the X and O marks split into 64-bit words, on larger boards, or null
+    private final long[] xWords;
+    private final long[] oWords;
+
+    // Empty cells, row * size + col, in no particular order, and the index of each cell in the list
+    private final int[] emptyCells;
+    private final int[] emptyIndices;
+    private int emptyCount;
+
+    // Row and column of the last mark placed, or -1 before the first one
+    private int lastRow = -1;
+    private int lastCol = -1;
 
     /**
-     * Constructs a game board with the default size.
+     * Constructs a game board with the default size and win streak.
      * Initializes the board with blank marks.
      */
     Board() {
-        this.boardSize = DEFAULT_BOARD_SIZE;
-        buildBlankBoard();
+        this(DEFAULT_BOARD_SIZE, DEFAULT_WIN_STREAK);
     }
 
     /**
-     * Constructs a game board with the specified size.
+     * Constructs a game board with the specified size and the default win streak.
      * Initializes the board with blank marks.
      *
      * @param size The size of the game board.
      */
     Board(int size) {
-        this.boardSize = size;
-        buildBlankBoard();
+        this(size, Math.min(DEFAULT_WIN_STREAK, size));
     }
 
-    // Private method to initialize the board with blank marks
-    private void buildBlankBoard() {
-        this.board = new Mark[boardSize][boardSize];
-        for (int row = 0; row < boardSize; row++) {
-            for (int col = 0; col < boardSize; col++) {
-                this.board[row][col] = Mark.BLANK;
-            }
+    /**
+     * Constructs a game board with the specified size and win streak.
+     * Initializes the board with blank marks.
+     *
+     * @param size      The size of the game board.
+     * @param winStreak The number of marks in a line required to win, at most the size.
+     */
+    Board(int size, int winStreak) {
+        this.boardSize = size;
+        this.winStreak = Math.max(1, winStreak);
+        this.winLines = WinLines.of(size, this.winStreak);
+        int words = WinLines.wordCount(size);
+        this.xWords = words > 1 ? new long[words] : null;
+        this.oWords = words > 1 ? new long[words] : null;
+        this.emptyCells = new int[size * size];
+        this.emptyIndices = new int[size * size];
+        for (int cell = 0; cell < size * size; cell++) {
+            emptyCells[cell] = cell;
+            emptyIndices[cell] = cell;
         }
+        this.emptyCount = size * size;
+    }
+
+    /**
+     * Constructs a copy of a game board, which players may search on without changing the original.
+     *
+     * @param other The board to copy.
+     */
+    Board(Board other) {
+        this.boardSize = other.boardSize;
+        this.winStreak = other.winStreak;
+        this.winLines = other.winLines;
+        this.xBits = other.xBits;
+        this.oBits = other.oBits;
+        this.xWords = other.xWords == null ? null : other.xWords.clone();
+        this.oWords = other.oWords == null ? null : other.oWords.clone();
+        this.emptyCells = other.emptyCells.clone();
+        this.emptyIndices = other.emptyIndices.clone();
+        this.emptyCount = other.emptyCount;
+        this.lastRow = other.lastRow;
+        this.lastCol = other.lastCol;
     }
 
     /**
@@ -51,20 +110,72 @@ public class Board {
         return boardSize;
     }
 
+    /**
+     * Gets the number of marks in a line required to win.
+     *
+     * @return The win streak.
+     */
+    public int getWinStreak() {
+        return winStreak;
+    }
+
     /**
      * Places a mark on the specified cell of the board.
      *
      * @param mark The mark (X or O) to be placed on the board.
      * @param row  The row index of the cell.
      * @param col  The column index of the cell.
-     * @return True if the mark was successfully placed, false if the cell is already occupied.
+     * @return True if the mark was successfully placed, false if the cell is already occupied
+     * or out of bounds.
      */
     public boolean putMark(Mark mark, int row, int col) {
+        // Out of bounds cells read as BLANK, but have no bit of their own to set
+        if (!isSquareInBoard(row, col) || getMark(row, col) != Mark.BLANK) {
+            return false;
+        }
+        int cell = row * boardSize + col;
+        if (mark != Mark.BLANK) {
+            removeEmptyCell(cell);
+        }
+        if (xWords == null) {
+            if (mark == Mark.X) {
+                xBits |= 1L << cell;
+            } else if (mark == Mark.O) {
+                oBits |= 1L << cell;
+            }
+        } else {
+            if (mark == Mark.X) {
+                xWords[cell / Long.SIZE] |= 1L << cell;
+            } else if (mark == Mark.O) {
+                oWords[cell / Long.SIZE] |= 1L << cell;
+            }
+        }
+        lastRow = row;
+        lastCol = col;
+        return true;
+    }
+
+    /**
+     * Removes the mark from the specified cell of the board, undoing a move of a search.
+     * The last move of the board is left as it was.
+     *
+     * @param row The row index of the cell.
+     * @param col The column index of the cell.
+     */
+    void removeMark(int row, int col) {
         if (getMark(row, col) == Mark.BLANK) {
-            board[row][col] = mark;
-            return true;
+            return;
+        }
+        int cell = row * boardSize + col;
+        emptyIndices[cell] = emptyCount;
+        emptyCells[emptyCount++] = cell;
+        if (xWords == null) {
+            xBits &= ~(1L << cell);
+            oBits &= ~(1L << cell);
+        } else {
+            xWords[cell / Long.SIZE] &= ~(1L << cell);
+            oWords[cell / Long.SIZE] &= ~(1L << cell);
         }
-        return false;
     }
 
     /**
@@ -75,12 +186,105 @@ public class Board {
      * @return The mark at the specified cell, or BLANK if the cell is out of bounds.
      */
     public Mark getMark(int row, int col) {
-        if (isSquareInBoard(row, col)) {
-            return board[row][col];
+        if (!isSquareInBoard(row, col)) {
+            return Mark.BLANK;
+        }
+        int cell = row * boardSize + col;
+        // Shifts of a long only use the low 6 bits of the cell, its bit within its word
+        long bit = 1L << cell;
+        long x = xWords == null ? xBits : xWords[cell / Long.SIZE];
+        long o = oWords == null ? oBits : oWords[cell / Long.SIZE];
+        if ((x & bit) != 0) {
+            return Mark.X;
+        }
+        if ((o & bit) != 0) {
+            return Mark.O;
         }
         return Mark.BLANK;
     }
 
+    /**
+     * Gets the number of empty cells on the board.
+     *
+     * @return The number of cells without a mark.
+     */
+    int getEmptyCount() {
+        return emptyCount;
+    }
+
+    /**
+     * Gets an empty cell of the board, by its index in the list of empty cells.
+     * The order of the list changes as marks are placed and removed.
+     *
+     * @param index The index of the cell in the list, from 0 to getEmptyCount() - 1.
+     * @return The cell, row * size + col.
+     */
+    int getEmptyCell(int index) {
+        return emptyCells[index];
+    }
+
+    /**
+     * Gets the row of the last mark placed on the board.
+     *
+     * @return The row index of the cell, or -1 if the board is blank.
+     */
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * Gets the column of the last mark placed on the board.
+     *
+     * @return The column index of the cell, or -1 if the board is blank.
+     */
+    public int getLastCol() {
+        return lastCol;
+    }
+
+    /**
+     * Checks if the marks of a player fill a line of winStreak cells through a cell.
+     * Only the lines through the cell are checked, in each of the four directions.
+     *
+     * @param mark The mark of the player (X or O).
+     * @param row  The row index of the cell.
+     * @param col  The column index of the cell.
+     * @return True if the player has a winning line through the cell, false otherwise.
+     */
+    boolean hasWinningLineThrough(Mark mark, int row, int col) {
+        if (mark == Mark.BLANK || !isSquareInBoard(row, col)) {
+            return false;
+        }
+        int cell = row * boardSize + col;
+        if (xWords == null) {
+            return winLines.isAnyCompleteThrough(cell, mark == Mark.X ? xBits : oBits);
+        }
+        return winLines.isAnyCompleteThrough(cell, mark == Mark.X ? xWords : oWords);
+    }
+
+    /**
+     * Scores the lines still open to one player or the other, to compare positions a search cannot
+     * see the end of. A line holding c marks of only one player scores c * c for that player.
+     *
+     * @param mark The mark of the player to score for (X or O).
+     * @return The score of the player's open lines, less the score of the opponent's.
+     */
+    int scoreOpenLines(Mark mark) {
+        if (xWords == null) {
+            return mark == Mark.X ? winLines.scoreOpenLines(xBits, oBits) :
+                    winLines.scoreOpenLines(oBits, xBits);
+        }
+        return mark == Mark.X ? winLines.scoreOpenLines(xWords, oWords) :
+                winLines.scoreOpenLines(oWords, xWords);
+    }
+
+    // Private method to drop a cell from the list of empty cells, moving the last one in its place
+    private void removeEmptyCell(int cell) {
+        int index = emptyIndices[cell];
+        int last = emptyCells[--emptyCount];
+        emptyCells[index] = last;
+        emptyIndices[last] = index;
+    }
+
     // Private method to check if a cell is within the board boundaries
     private boolean isSquareInBoard(int row, int col) {
         return row >= 0 && row < boardSize && col >= 0 && col < boardSize;
@@ -5,7 +5,8 @@ import java.util.Random;
  * The clever player has a chance of making a strategic move and otherwise makes a random move.
  */
 public class CleverPlayer implements Player {
-
+    // Source of the player's random choices
+    private final Random random = new Random();
 
     CleverPlayer() {
     }
@@ -20,10 +21,8 @@ public class CleverPlayer implements Player {
      */
     @Override
     public void playTurn(Board board, Mark mark) {
-        Random rand = new Random();
-
         // Determine if the player will make a strategic move based on a random probability
-        int possibilityForCleverPlay = rand.nextInt(100);
+        int possibilityForCleverPlay = random.nextInt(100);
         if (possibilityForCleverPlay >= 75) {
             // Iterate through the board to find the player's mark and attempt a strategic move
             for (int row = 0; row < board.getSize(); row++) {
@@ -94,13 +93,22 @@ public class CleverPlayer implements Player {
      */
     private int[] getRandomCoordinates(Board board) {
         int row, col;
-        Random rand = new Random();
         while (true) {
-            row = rand.nextInt(board.getSize());
-            col = rand.nextInt(board.getSize());
+            row = random.nextInt(board.getSize());
+            col = random.nextInt(board.getSize());
             if (board.getMark(row, col) == Mark.BLANK) {
                 return new int[]{row, col};
             }
         }
     }
+
+    /**
+     * Seeds the player's random choices.
+     *
+     * @param seed The seed of the player's random choices.
+     */
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
 }
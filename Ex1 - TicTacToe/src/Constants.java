@@ -1,6 +1,6 @@
 public class Constants {
     public final static String UNKNOWN_PLAYER_NAME = "Choose a player," +
-            " and start again.\nThe players: [human, clever, whatever, genius]";
+            " and start again.\nThe players: [human, clever, whatever, genius, perfect, mcts]";
 
     public final static String UNKNOWN_RENDERER_NAME = "Choose a renderer," +
             " and start again. \nPlease choose one of the following [console, none]";
@@ -47,8 +47,8 @@ public class Game {
         this.playerX = playerX;
         this.playerO = playerO;
         this.renderer = renderer;
-        this.board = new Board(size);
         this.winStreak = Math.min(winStreak, size);
+        this.board = new Board(size, this.winStreak);
     }
 
     /**
@@ -101,54 +101,15 @@ public class Game {
 
     /**
      * Checks if a player with the given mark has achieved a win streak on the game board.
+     * Only a line through the last mark placed can have been completed by the turn just played,
+     * so only the lines through it are checked.
      *
      * @param mark The mark of the player (X or O) to check for a win.
      * @return True if the player has won, false otherwise.
      */
     private boolean isThereAWinner(Mark mark) {
-        // Check rows and columns for a win
-        for (int row = 0; row < getBoardSize(); row++) {
-            int rowStreak = 0;
-            int colStreak = 0;
-            for (int col = 0; col < getBoardSize(); col++) {
-                if (board.getMark(row, col) == mark) {
-                    rowStreak += 1;
-                    if (rowStreak == winStreak) return true;
-                } else {
-                    rowStreak = 0;
-                }
-                if (board.getMark(col, row) == mark) {
-                    colStreak += 1;
-                    if (colStreak == winStreak) return true;
-                } else {
-                    colStreak = 0;
-                }
-            }
-        }
-
-        // Check diagonals for a win
-        for (int row = 0; row <= getBoardSize() - winStreak; row++) {
-            for (int col = 0; col <= getBoardSize() - winStreak; col++) {
-                boolean mainDiagonalStreak = true;
-                boolean antiDiagonalStreak = true;
-                for (int diagonalInterval = 0; diagonalInterval < winStreak; diagonalInterval++) {
-                    // Check main diagonal
-                    if (board.getMark(row + diagonalInterval, col + diagonalInterval) != mark) {
-                        mainDiagonalStreak = false;
-                    }
-                    // Check anti-diagonal
-                    if (board.getMark(row + diagonalInterval,
-                            col + winStreak - 1 - diagonalInterval)
-                            != mark) {
-                        antiDiagonalStreak = false;
-                    }
-                }
-                // If any diagonal is a win, return true
-                if (mainDiagonalStreak || antiDiagonalStreak) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        int row = board.getLastRow();
+        int col = board.getLastCol();
+        return board.getMark(row, col) == mark && board.hasWinningLineThrough(mark, row, col);
     }
 }
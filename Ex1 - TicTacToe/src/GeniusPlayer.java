@@ -6,6 +6,9 @@ import java.util.Random;
  * both orthogonally and diagonally.
  */
 public class GeniusPlayer implements Player {
+    // Source of the player's random moves
+    private final Random random = new Random();
+
     /**
      * Plays a turn for the genius player on the given game board.
      * The player attempts to make a strategic move by checking for vacant slots near its own marks.
@@ -99,13 +102,22 @@ public class GeniusPlayer implements Player {
      */
     private int[] getRandomCoordinates(Board board) {
         int row, col;
-        Random rand = new Random();
         while (true) {
-            row = rand.nextInt(board.getSize());
-            col = rand.nextInt(board.getSize());
+            row = random.nextInt(board.getSize());
+            col = random.nextInt(board.getSize());
             if (board.getMark(row, col) == Mark.BLANK) {
                 return new int[]{row, col};
             }
         }
     }
+
+    /**
+     * Seeds the player's random moves.
+     *
+     * @param seed The seed of the player's random choices.
+     */
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
 }
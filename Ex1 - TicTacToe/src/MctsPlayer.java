@@ -0,0 +1,385 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Represents a Monte Carlo Tree Search player in a Tic-Tac-Toe game, for boards too large to search
+ * exhaustively. Each move is chosen by playing random games (playouts) from the current position,
+ * growing a tree of the positions met on the way and descending it by the UCT formula, which balances
+ * the moves that won most with the moves tried least.
+ * The playouts run on several workers at once, each growing its own tree from the same position;
+ * their visit counts of the moves from the position are merged at the end, and the most visited move
+ * is played. The workers of all MCTS players run on one shared pool of a thread per core, so players
+ * playing on several threads at once, as in a parallel tournament, do not multiply the threads.
+ * The trees are stored in flat arrays of primitives that are reused from turn to turn, and the
+ * playouts pick random moves from the board's list of empty cells, so a turn allocates almost
+ * nothing. The number of playouts and the playouts per second of every turn are logged at level
+ * FINE, printed when running with -Dtictactoe.searchStats=true.
+ */
+public class MctsPlayer implements Player {
+    private static final Logger LOGGER = SearchLogging.getLogger(MctsPlayer.class);
+
+    // Default number of playouts in a turn, over all the workers
+    private static final long DEFAULT_PLAYOUT_BUDGET = 20_000;
+
+    // Weight of trying less visited moves against playing the moves that won most
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    // Number of playouts between checks of the time budget
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    private static final String WORKER_THREAD_NAME = "mcts-worker";
+
+    // Marks of the two sides, X first
+    private static final Mark[] MARKS = {Mark.X, Mark.O};
+
+    // Number of playouts and milliseconds in a turn, or 0 for no limit
+    private final long playoutBudget;
+    private final long timeBudgetMillis;
+
+    // Threads running the workers of all the MCTS players, one for each core
+    private static final ExecutorService WORKER_THREADS =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+                Thread worker = new Thread(task, WORKER_THREAD_NAME);
+                worker.setDaemon(true);
+                return worker;
+            });
+
+    // Trees of the player's workers, one tree for each worker
+    private final SearchTree[] trees;
+
+    // Source of the seeds of the workers' playouts
+    private SplittableRandom random = new SplittableRandom();
+
+    /**
+     * Constructs an MCTS player with the default playout budget, running a worker on every core.
+     */
+    MctsPlayer() {
+        this(DEFAULT_PLAYOUT_BUDGET, 0, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an MCTS player with the specified budgets, stopping at whichever runs out first.
+     *
+     * @param playoutBudget    The number of playouts in a turn, over all the workers, or 0 for no limit.
+     * @param timeBudgetMillis The number of milliseconds in a turn, or 0 for no limit.
+     * @param workerCount      The number of workers running playouts at once.
+     * @throws IllegalArgumentException If neither budget is limited, or there are no workers.
+     */
+    MctsPlayer(long playoutBudget, long timeBudgetMillis, int workerCount) {
+        if (playoutBudget <= 0 && timeBudgetMillis <= 0) {
+            throw new IllegalArgumentException("Either the playouts or the time of a turn must be limited");
+        }
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one worker is needed, not " + workerCount);
+        }
+        this.playoutBudget = playoutBudget;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.trees = new SearchTree[workerCount];
+        for (int tree = 0; tree < workerCount; tree++) {
+            trees[tree] = new SearchTree();
+        }
+    }
+
+    /**
+     * Plays a turn for the MCTS player on the given game board.
+     * The workers run playouts until the budget runs out, and the player places its mark on the
+     * cell visited most over all of their trees.
+     *
+     * @param board The current game board.
+     * @param mark  The mark (X or O) of the MCTS player.
+     */
+    @Override
+    public void playTurn(Board board, Mark mark) {
+        if (board.getEmptyCount() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = timeBudgetMillis > 0 ? start + timeBudgetMillis * 1_000_000 : Long.MAX_VALUE;
+        long playoutsPerTree = playoutBudget > 0 ?
+                (playoutBudget + trees.length - 1) / trees.length : Long.MAX_VALUE;
+        int side = mark == Mark.X ? 0 : 1;
+
+        List<Callable<int[]>> searches = new ArrayList<>(trees.length);
+        for (SearchTree tree : trees) {
+            long seed = random.nextLong();
+            searches.add(() -> tree.search(board, side, playoutsPerTree, deadline, seed));
+        }
+        int size = board.getSize();
+        int[] visits = new int[size * size];
+        long playouts = 0;
+        try {
+            for (Future<int[]> search : WORKER_THREADS.invokeAll(searches)) {
+                int[] treeVisits = search.get();
+                for (int cell = 0; cell < visits.length; cell++) {
+                    visits[cell] += treeVisits[cell];
+                    playouts += treeVisits[cell];
+                }
+            }
+        } catch (InterruptedException e) {
+            // Play the best move found so far
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("An MCTS worker failed", e.getCause());
+        }
+
+        int bestCell = board.getEmptyCell(0);
+        for (int cell = 0; cell < visits.length; cell++) {
+            if (visits[cell] > visits[bestCell]) {
+                bestCell = cell;
+            }
+        }
+        board.putMark(mark, bestCell / size, bestCell % size);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long played = playouts;
+        LOGGER.fine(() -> String.format(Locale.ROOT,
+                "%s ran %d playouts on %d workers in %.3f s (%.0f playouts/s)",
+                mark, played, trees.length, seconds, played / Math.max(seconds, 1e-9)));
+    }
+
+    /**
+     * Seeds the random choices of the workers, which are replayed exactly under a playout budget.
+     * Under a time budget the number of playouts still varies from run to run.
+     *
+     * @param seed The seed of the player's random choices.
+     */
+    @Override
+    public void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * The search tree of a worker, kept in flat arrays indexed by node, with the root at index 0.
+     * The children of a node are linked through their first child and next sibling, and are added one
+     * at a time, in the order of their cells, until every move from the node has one.
+     */
+    private static final class SearchTree {
+        // Initial number of nodes the arrays hold
+        private static final int INITIAL_CAPACITY = 1 << 12;
+
+        // Winner of a drawn playout, and of a playout not finished yet
+        private static final int DRAW = -1;
+        private static final int UNDECIDED = -2;
+
+        // Move into each node, its first child and next sibling, or -1, and the next cell
+        // that may be a move not added as a child yet
+        private int[] moves = new int[INITIAL_CAPACITY];
+        private int[] firstChildren = new int[INITIAL_CAPACITY];
+        private int[] nextSiblings = new int[INITIAL_CAPACITY];
+        private int[] nextCells = new int[INITIAL_CAPACITY];
+
+        // Visits of each node, and its wins counted twice and draws once for the side moving into it
+        private int[] visits = new int[INITIAL_CAPACITY];
+        private long[] scores = new long[INITIAL_CAPACITY];
+        private int nodeCount;
+
+        // Nodes on the path of the current playout, and the cells marked on the way
+        private int[] path = new int[0];
+        private int pathLength;
+        private int[] playedCells = new int[0];
+        private int playedCount;
+
+        private Board board;
+        private SplittableRandom random;
+
+        /**
+         * Runs playouts from a position, growing the tree from scratch.
+         *
+         * @param position The board to play from, left unchanged.
+         * @param rootSide The side to move, 0 for X and 1 for O.
+         * @param playouts The number of playouts to run.
+         * @param deadline The System.nanoTime() to stop at.
+         * @param seed     The seed of the random moves.
+         * @return The number of visits of each move from the position, by cell.
+         */
+        int[] search(Board position, int rootSide, long playouts, long deadline, long seed) {
+            board = new Board(position);
+            random = new SplittableRandom(seed);
+            int cellCount = board.getSize() * board.getSize();
+            if (path.length < cellCount + 1) {
+                path = new int[cellCount + 1];
+                playedCells = new int[cellCount];
+            }
+            nodeCount = 0;
+            addNode(-1);
+
+            for (long playout = 0; playout < playouts; playout++) {
+                if (playout % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() >= deadline) {
+                    break;
+                }
+                playedCount = 0;
+                int winner = descend(rootSide);
+                if (winner == UNDECIDED) {
+                    winner = runPlayout(rootSide);
+                }
+                backPropagate(rootSide, winner);
+                while (playedCount > 0) {
+                    int cell = playedCells[--playedCount];
+                    board.removeMark(cell / board.getSize(), cell % board.getSize());
+                }
+            }
+
+            int[] rootVisits = new int[cellCount];
+            for (int child = firstChildren[0]; child >= 0; child = nextSiblings[child]) {
+                rootVisits[moves[child]] = visits[child];
+            }
+            return rootVisits;
+        }
+
+        /**
+         * Descends the tree by UCT from the root, adding a child to the first node that lacks one.
+         * Every node passed is appended to the path, and every move made is marked on the board.
+         *
+         * @param rootSide The side to move at the root.
+         * @return The winner or DRAW if the game ended in the tree, or UNDECIDED if a playout must
+         * decide it.
+         */
+        private int descend(int rootSide) {
+            path[0] = 0;
+            pathLength = 1;
+            int node = 0;
+            int side = rootSide;
+            while (board.getEmptyCount() > 0) {
+                int cell = nextUntriedCell(node);
+                boolean added = cell >= 0;
+                int child;
+                if (added) {
+                    child = addNode(cell);
+                    nextSiblings[child] = firstChildren[node];
+                    firstChildren[node] = child;
+                } else {
+                    child = selectChild(node);
+                    cell = moves[child];
+                }
+                path[pathLength++] = child;
+                if (play(cell, side)) {
+                    return side;
+                }
+                if (added) {
+                    return UNDECIDED;
+                }
+                node = child;
+                side = 1 - side;
+            }
+            return DRAW;
+        }
+
+        /**
+         * Finishes the game from the end of the path with random moves.
+         *
+         * @param rootSide The side to move at the root.
+         * @return The winner, or DRAW.
+         */
+        private int runPlayout(int rootSide) {
+            // The path holds the root and one node for each move, so its length tells whose turn it is
+            int side = (pathLength % 2 == 1) ? rootSide : 1 - rootSide;
+            while (board.getEmptyCount() > 0) {
+                int cell = board.getEmptyCell(random.nextInt(board.getEmptyCount()));
+                if (play(cell, side)) {
+                    return side;
+                }
+                side = 1 - side;
+            }
+            return DRAW;
+        }
+
+        // Private method to count the result of a playout in every node of its path
+        private void backPropagate(int rootSide, int winner) {
+            for (int depth = 0; depth < pathLength; depth++) {
+                int node = path[depth];
+                visits[node]++;
+                // Nodes at odd depths are moved into by the side to move at the root
+                int mover = depth % 2 == 1 ? rootSide : 1 - rootSide;
+                if (winner == mover) {
+                    scores[node] += 2;
+                } else if (winner == DRAW) {
+                    scores[node] += 1;
+                }
+            }
+        }
+
+        /**
+         * Picks the child of a node with the highest UCT value.
+         *
+         * @param node The node, all of whose moves have children.
+         * @return The child.
+         */
+        private int selectChild(int node) {
+            double logVisits = Math.log(visits[node]);
+            int best = firstChildren[node];
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+                double value = scores[child] / (2.0 * visits[child]) +
+                        EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Finds the next move from a node without a child, moving the node's cursor past it.
+         *
+         * @param node The node, whose position is on the board.
+         * @return The cell of the move, or -1 if every move has a child.
+         */
+        private int nextUntriedCell(int node) {
+            int size = board.getSize();
+            for (int cell = nextCells[node]; cell < size * size; cell++) {
+                if (board.getMark(cell / size, cell % size) == Mark.BLANK) {
+                    nextCells[node] = cell + 1;
+                    return cell;
+                }
+            }
+            nextCells[node] = size * size;
+            return -1;
+        }
+
+        /**
+         * Marks a cell for a side, remembering it to be undone after the playout.
+         *
+         * @param cell The cell, row * size + col.
+         * @param side The side moving, 0 for X and 1 for O.
+         * @return True if the move completes a line, false otherwise.
+         */
+        private boolean play(int cell, int side) {
+            int row = cell / board.getSize();
+            int col = cell % board.getSize();
+            board.putMark(MARKS[side], row, col);
+            playedCells[playedCount++] = cell;
+            return board.hasWinningLineThrough(MARKS[side], row, col);
+        }
+
+        // Private method to add a node without children, growing the arrays if they are full
+        private int addNode(int move) {
+            if (nodeCount == moves.length) {
+                int capacity = 2 * moves.length;
+                moves = Arrays.copyOf(moves, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+                nextCells = Arrays.copyOf(nextCells, capacity);
+                visits = Arrays.copyOf(visits, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            int node = nodeCount++;
+            moves[node] = move;
+            firstChildren[node] = -1;
+            nextSiblings[node] = -1;
+            nextCells[node] = 0;
+            visits[node] = 0;
+            scores[node] = 0;
+            return node;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.Locale;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+/**
+ * Represents a perfect player in a Tic-Tac-Toe game, which searches the game tree for its moves.
+ * The player runs a negamax search with alpha-beta pruning, one move deeper at a time, until the game
+ * is solved or its node budget runs out, and plays the best move of the deepest search it completed.
+ * Searched positions are kept in a transposition table of primitive arrays, indexed by the Zobrist
+ * hash of the position, and moves are tried best first: the best move stored for the position, then
+ * the moves that cut off the most searches so far, then the ones nearest the center.
+ * Small boards are solved exactly. On larger ones only moves next to a mark are searched, and the
+ * positions at the search horizon are scored by the lines still open to each player.
+ * The number of nodes searched and the nodes searched per second of every turn are logged at level
+ * FINE, printed when running with -Dtictactoe.searchStats=true.
+ * The player makes no random choices, but seeding it starts a fresh transposition table, so the games
+ * played after it do not depend on the positions searched before.
+ */
+public class PerfectPlayer implements Player {
+    private static final Logger LOGGER = SearchLogging.getLogger(PerfectPlayer.class);
+
+    // Default number of nodes searched in a turn
+    private static final long DEFAULT_NODE_BUDGET = 500_000;
+
+    // Number of index bits of the transposition table
+    private static final int TABLE_BITS = 18;
+
+    // Boards larger than this only search moves next to a mark
+    private static final int MAX_FULL_WIDTH_SIZE = 5;
+
+    // Score of a won position, less the number of moves to the win
+    private static final int WIN_SCORE = 1_000_000_000;
+
+    // Scores beyond this are wins or losses, not estimates
+    private static final int WIN_THRESHOLD = WIN_SCORE / 2;
+
+    // Kinds of scores stored in the transposition table
+    private static final byte EXACT = 0;
+    private static final byte LOWER_BOUND = 1;
+    private static final byte UPPER_BOUND = 2;
+
+    // Seed of the Zobrist keys, fixed so positions hash the same in every run
+    private static final long ZOBRIST_SEED = 0x9E3779B97F4A7C15L;
+
+    // Marks of the two sides, X first
+    private static final Mark[] MARKS = {Mark.X, Mark.O};
+
+    // Number of nodes searched in a turn before the search stops
+    private final long nodeBudget;
+
+    // Zobrist keys of X on each cell, then of O on each cell, and of O being to move
+    private long[] zobristKeys;
+    private long sideKey;
+
+    // Key mixed into every hash, changed to leave the entries stored so far behind
+    private long tableSalt;
+
+    // Transposition table entries: hash, score, remaining depth, kind of score and best move
+    private long[] tableHashes;
+    private int[] tableScores;
+    private int[] tableDepths;
+    private byte[] tableKinds;
+    private int[] tableMoves;
+
+    // Board size and win streak the keys and the table were built for
+    private int preparedSize = -1;
+    private int preparedWinStreak = -1;
+
+    // Search state of the current turn
+    private Board board;
+    private int size;
+    private int cellCount;
+    private int emptyCells;
+    private long hash;
+    private long[] history;
+    private int[][] movesByPly;
+    private long nodes;
+    private boolean canAbort;
+    private boolean aborted;
+    private int rootMove;
+
+    /**
+     * Constructs a perfect player with the default node budget.
+     */
+    PerfectPlayer() {
+        this(DEFAULT_NODE_BUDGET);
+    }
+
+    /**
+     * Constructs a perfect player searching up to a number of nodes in a turn.
+     *
+     * @param nodeBudget The number of nodes searched before the search stops.
+     */
+    PerfectPlayer(long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Plays a turn for the perfect player on the given game board.
+     * The player searches deeper and deeper until the game is solved or the node budget runs out,
+     * and places its mark on the best cell of the deepest completed search.
+     *
+     * @param board The current game board.
+     * @param mark  The mark (X or O) of the perfect player.
+     */
+    @Override
+    public void playTurn(Board board, Mark mark) {
+        long start = System.nanoTime();
+        prepare(board);
+        if (emptyCells == 0) {
+            return;
+        }
+        int side = mark == Mark.X ? 0 : 1;
+        nodes = 0;
+        int bestMove = -1;
+        int bestScore = 0;
+        int depth = 0;
+        while (depth < emptyCells) {
+            // The first search always completes, so there is a move to play
+            canAbort = depth > 0;
+            aborted = false;
+            int score = search(depth + 1, 0, -WIN_SCORE - 1, WIN_SCORE + 1, side);
+            if (aborted) {
+                break;
+            }
+            depth++;
+            bestMove = rootMove;
+            bestScore = score;
+            if (Math.abs(score) > WIN_THRESHOLD) {
+                break;
+            }
+        }
+        board.putMark(mark, bestMove / size, bestMove % size);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long searched = nodes;
+        int reached = depth;
+        int score = bestScore;
+        LOGGER.fine(() -> String.format(Locale.ROOT,
+                "%s searched %d nodes to depth %d in %.3f s (%.0f nodes/s), score %d",
+                mark, searched, reached, seconds, searched / Math.max(seconds, 1e-9), score));
+    }
+
+    /**
+     * Starts a fresh transposition table, without clearing the arrays: the entries stored so far are
+     * hashed with the previous salt, so they are never found again and are overwritten as they go.
+     *
+     * @param seed The seed of the new salt.
+     */
+    @Override
+    public void setSeed(long seed) {
+        tableSalt = new SplittableRandom(seed).nextLong();
+    }
+
+    // Private method to copy the board for the search, building the keys and table it needs
+    private void prepare(Board board) {
+        this.board = new Board(board);
+        size = board.getSize();
+        cellCount = size * size;
+        if (size != preparedSize || board.getWinStreak() != preparedWinStreak) {
+            Random random = new Random(ZOBRIST_SEED);
+            zobristKeys = new long[2 * cellCount];
+            for (int key = 0; key < zobristKeys.length; key++) {
+                zobristKeys[key] = random.nextLong();
+            }
+            sideKey = random.nextLong();
+            tableHashes = new long[1 << TABLE_BITS];
+            tableScores = new int[1 << TABLE_BITS];
+            tableDepths = new int[1 << TABLE_BITS];
+            tableKinds = new byte[1 << TABLE_BITS];
+            tableMoves = new int[1 << TABLE_BITS];
+            history = new long[cellCount];
+            movesByPly = new int[cellCount + 1][];
+            preparedSize = size;
+            preparedWinStreak = board.getWinStreak();
+        }
+        hash = 0;
+        emptyCells = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int row = cell / size;
+            int col = cell % size;
+            Mark mark = board.getMark(row, col);
+            if (mark == Mark.BLANK) {
+                emptyCells++;
+            } else {
+                hash ^= zobristKeys[(mark == Mark.X ? 0 : cellCount) + cell];
+            }
+            // Moves nearer the center are tried first, until cutoffs say otherwise
+            history[cell] = -(Math.abs(2 * row - size + 1) + Math.abs(2 * col - size + 1));
+        }
+    }
+
+    /**
+     * Searches a position with negamax and alpha-beta pruning.
+     *
+     * @param depth The number of moves to search ahead.
+     * @param ply   The number of moves since the root.
+     * @param alpha The score the side to move is already sure of.
+     * @param beta  The score the opponent is already sure of, negated.
+     * @param side  The side to move, 0 for X and 1 for O.
+     * @return The score of the position for the side to move.
+     */
+    private int search(int depth, int ply, int alpha, int beta, int side) {
+        nodes++;
+        if (canAbort && nodes > nodeBudget) {
+            aborted = true;
+            return 0;
+        }
+        if (emptyCells == 0) {
+            return 0;
+        }
+        if (depth == 0) {
+            return board.scoreOpenLines(MARKS[side]);
+        }
+
+        long positionHash = (side == 0 ? hash : hash ^ sideKey) ^ tableSalt;
+        int index = (int) positionHash & (tableHashes.length - 1);
+        int tableMove = -1;
+        if (tableHashes[index] == positionHash) {
+            tableMove = tableMoves[index];
+            if (ply > 0 && tableDepths[index] >= depth) {
+                int score = fromTable(tableScores[index], ply);
+                byte kind = tableKinds[index];
+                if (kind == EXACT || (kind == LOWER_BOUND && score >= beta) ||
+                        (kind == UPPER_BOUND && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        if (movesByPly[ply] == null) {
+            movesByPly[ply] = new int[cellCount];
+        }
+        int[] moves = movesByPly[ply];
+        int count = generateMoves(moves, size > MAX_FULL_WIDTH_SIZE && emptyCells < cellCount);
+        if (count == 0) {
+            count = generateMoves(moves, false);
+        }
+
+        int alphaOriginal = alpha;
+        int best = -WIN_SCORE - 1;
+        int bestMove = -1;
+        for (int next = 0; next < count; next++) {
+            int cell = selectMove(moves, next, count, tableMove);
+            int row = cell / size;
+            int col = cell % size;
+            board.putMark(MARKS[side], row, col);
+            hash ^= zobristKeys[side * cellCount + cell];
+            emptyCells--;
+            int score;
+            if (board.hasWinningLineThrough(MARKS[side], row, col)) {
+                score = WIN_SCORE - ply - 1;
+            } else {
+                score = -search(depth - 1, ply + 1, -beta, -alpha, 1 - side);
+            }
+            board.removeMark(row, col);
+            hash ^= zobristKeys[side * cellCount + cell];
+            emptyCells++;
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = cell;
+            }
+            alpha = Math.max(alpha, best);
+            if (alpha >= beta) {
+                history[cell] += (long) depth * depth;
+                break;
+            }
+        }
+
+        tableHashes[index] = positionHash;
+        tableScores[index] = toTable(best, ply);
+        tableDepths[index] = depth;
+        tableKinds[index] = best <= alphaOriginal ? UPPER_BOUND : best >= beta ? LOWER_BOUND : EXACT;
+        tableMoves[index] = bestMove;
+        if (ply == 0) {
+            rootMove = bestMove;
+        }
+        return best;
+    }
+
+    /**
+     * Lists the empty cells a search may move to.
+     *
+     * @param moves         The array to list the cells in.
+     * @param nearMarksOnly Whether to list only cells next to a mark.
+     * @return The number of cells listed.
+     */
+    private int generateMoves(int[] moves, boolean nearMarksOnly) {
+        int count = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int row = cell / size;
+            int col = cell % size;
+            if (board.getMark(row, col) == Mark.BLANK && (!nearMarksOnly || isNextToMark(row, col))) {
+                moves[count++] = cell;
+            }
+        }
+        return count;
+    }
+
+    // Private method to check if any of the eight neighbors of a cell holds a mark
+    private boolean isNextToMark(int row, int col) {
+        for (int rowStep = -1; rowStep <= 1; rowStep++) {
+            for (int colStep = -1; colStep <= 1; colStep++) {
+                if (board.getMark(row + rowStep, col + colStep) != Mark.BLANK) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the most promising of the moves not tried yet to the front of them.
+     * The moves are ordered lazily, as a cutoff often leaves most of them untried.
+     *
+     * @param moves     The listed moves, those before next already tried.
+     * @param next      The index of the first move not tried yet.
+     * @param count     The number of listed moves.
+     * @param tableMove The best move stored for the position, or -1.
+     * @return The move to try next.
+     */
+    private int selectMove(int[] moves, int next, int count, int tableMove) {
+        int best = next;
+        for (int i = next; i < count; i++) {
+            if (moves[i] == tableMove) {
+                best = i;
+                break;
+            }
+            if (history[moves[i]] > history[moves[best]]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[next];
+        moves[next] = move;
+        return move;
+    }
+
+    // Private method to make a win score relative to the stored position, not to the root
+    private static int toTable(int score, int ply) {
+        if (score > WIN_THRESHOLD) {
+            return score + ply;
+        }
+        if (score < -WIN_THRESHOLD) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    // Private method to make a stored win score relative to the root again
+    private static int fromTable(int score, int ply) {
+        if (score > WIN_THRESHOLD) {
+            return score - ply;
+        }
+        if (score < -WIN_THRESHOLD) {
+            return score + ply;
+        }
+        return score;
+    }
+}
@@ -7,4 +7,13 @@ public interface Player {
      * @param mark  The player's mark (X or O) indicating the symbol to be placed on the board.
      */
     void playTurn(Board board, Mark mark);
+
+    /**
+     * Seeds the player's random choices, so the games it plays next can be played again.
+     * Players without random choices ignore the seed.
+     *
+     * @param seed The seed of the player's random choices.
+     */
+    default void setSeed(long seed) {
+    }
 }
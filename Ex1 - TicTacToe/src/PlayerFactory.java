@@ -8,7 +8,8 @@ public class PlayerFactory {
     /**
      * Builds and returns an instance of a player based on the provided player type.
      *
-     * @param type The type of player to be created (e.g., "human", "clever", "whatever", "genius").
+     * @param type The type of player to be created (e.g., "human", "clever", "whatever", "genius",
+     *             "perfect", "mcts").
      * @return An instance of the corresponding player type, or null if the type is not recognized.
      */
     public Player buildPlayer(String type) {
@@ -22,6 +23,10 @@ public class PlayerFactory {
                 return new WhateverPlayer();
             case "genius":
                 return new GeniusPlayer();
+            case "perfect":
+                return new PerfectPlayer();
+            case "mcts":
+                return new MctsPlayer();
             default:
                 return null;
         }
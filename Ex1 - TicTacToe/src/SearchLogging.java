@@ -0,0 +1,36 @@
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the loggers the searching players report their statistics to, such as the nodes searched
+ * in a turn and the nodes searched per second, for tuning them.
+ * The statistics are logged at level FINE, which is hidden by default. Running with the system
+ * property tictactoe.searchStats set to true prints them to the console.
+ */
+final class SearchLogging {
+    // System property printing the search statistics when true
+    static final String STATS_PROPERTY = "tictactoe.searchStats";
+
+    private SearchLogging() {
+    }
+
+    /**
+     * Gets the logger of a searching player, printing its statistics if the property asks for them.
+     *
+     * @param player The class of the player.
+     * @return The logger of the class.
+     */
+    static Logger getLogger(Class<? extends Player> player) {
+        Logger logger = Logger.getLogger(player.getName());
+        if (Boolean.getBoolean(STATS_PROPERTY)) {
+            ConsoleHandler handler = new ConsoleHandler();
+            handler.setLevel(Level.FINE);
+            logger.addHandler(handler);
+            logger.setLevel(Level.FINE);
+            // The handler prints the statistics, so the root handler should not print them again
+            logger.setUseParentHandlers(false);
+        }
+        return logger;
+    }
+}
@@ -1,8 +1,23 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Represents a Tic-Tac-Toe tournament between two players over multiple rounds.
  * Tracks the results of each round and displays the final tournament results.
+ * The rounds may be played on several threads at once, with the same results for the same seed.
  */
 public class Tournament {
+    // Odd step between the seeds of consecutive rounds, spreading them over all the longs
+    private static final long ROUND_SEED_STEP = 0x9E3779B97F4A7C15L;
+
     // Number of rounds in the tournament
     private int rounds;
 
@@ -38,48 +53,147 @@ public class Tournament {
      * @param playerName2 The name of the second player.
      */
     public void playTournament(int size, int winStreak, String playerName1, String playerName2) {
-        int playerWinCounter1 = 0;
-        int playerWinCounter2 = 0;
-        int tieCounter = 0;
-        Game game;
-        for (int round = 0; round < rounds; round++) {
-            if (round % 2 == 0) {
-                game = new Game(player1, player2, size, winStreak, renderer);
-            } else {
-                game = new Game(player2, player1, size, winStreak, renderer);
-            }
-            Mark winnerMark = game.run();
-            switch (winnerMark) {
-                case BLANK:
-                    tieCounter++;
-                    break;
-                case X:
-                    if (round % 2 == 0) {
-                        playerWinCounter1++;
-                    } else {
-                        playerWinCounter2++;
-                    }
-                    break;
-                case O:
-                    if (round % 2 == 0) {
-                        playerWinCounter2++;
-                    } else {
-                        playerWinCounter1++;
-                    }
-                    break;
+        playTournament(size, winStreak, playerName1, playerName2, 1, new Random().nextLong());
+    }
+
+    /**
+     * Conducts a Tic-Tac-Toe tournament on a number of threads, with the rounds seeded from a seed.
+     * Each round seeds the players from the seed and the round's number, so the totals of a seed are
+     * the same on any number of threads. With more than one thread, every thread plays its rounds
+     * with its own instances of the players, built by the player factory, and adds their results
+     * to counters shared without locks.
+     *
+     * @param size        The size of the game board.
+     * @param winStreak   The win streak required for a player to win.
+     * @param playerName1 The name of the first player.
+     * @param playerName2 The name of the second player.
+     * @param threads     The number of threads playing rounds at once.
+     * @param seed        The seed of the tournament.
+     */
+    public void playTournament(int size, int winStreak, String playerName1, String playerName2,
+                               int threads, long seed) {
+        RoundResults results = new RoundResults();
+        if (threads <= 1) {
+            for (int round = 0; round < rounds; round++) {
+                playRound(round, seed, player1, player2, size, winStreak, results);
             }
+        } else {
+            playRoundsInParallel(threads, seed, playerName1, playerName2, size, winStreak, results);
         }
         // Summary of the score
         System.out.println("######### Results #########");
-        System.out.printf("Player 1, %s won: %d rounds\n", playerName1, playerWinCounter1);
-        System.out.printf("Player 2, %s won: %d rounds\n", playerName2, playerWinCounter2);
-        System.out.printf("Ties: %d\n", tieCounter);
+        System.out.printf("Player 1, %s won: %d rounds\n", playerName1, results.playerWinCounter1.sum());
+        System.out.printf("Player 2, %s won: %d rounds\n", playerName2, results.playerWinCounter2.sum());
+        System.out.printf("Ties: %d\n", results.tieCounter.sum());
+    }
+
+    /**
+     * Plays the rounds on a pool of threads, each taking the next round not played yet.
+     * If a thread fails, the others stop after their current round.
+     *
+     * @param threads     The number of threads playing rounds at once.
+     * @param seed        The seed of the tournament.
+     * @param playerName1 The name of the first player.
+     * @param playerName2 The name of the second player.
+     * @param size        The size of the game board.
+     * @param winStreak   The win streak required for a player to win.
+     * @param results     The counters to add the results to.
+     */
+    private void playRoundsInParallel(int threads, long seed, String playerName1, String playerName2,
+                                      int size, int winStreak, RoundResults results) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextRound = new AtomicInteger();
+        List<Future<Void>> workers = new ArrayList<>(threads);
+        for (int worker = 0; worker < threads; worker++) {
+            workers.add(pool.submit(() -> {
+                try {
+                    Player workerPlayer1 = new PlayerFactory().buildPlayer(playerName1);
+                    Player workerPlayer2 = new PlayerFactory().buildPlayer(playerName2);
+                    for (int round = nextRound.getAndIncrement(); round < rounds;
+                         round = nextRound.getAndIncrement()) {
+                        playRound(round, seed, workerPlayer1, workerPlayer2, size, winStreak, results);
+                    }
+                    return null;
+                } catch (RuntimeException | Error e) {
+                    // Leave no rounds for the other threads
+                    nextRound.set(rounds);
+                    throw e;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            nextRound.set(rounds);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A tournament thread failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays a round, the first player playing X in even rounds and O in odd ones.
+     *
+     * @param round     The number of the round.
+     * @param seed      The seed of the tournament.
+     * @param player1   The first player.
+     * @param player2   The second player.
+     * @param size      The size of the game board.
+     * @param winStreak The win streak required for a player to win.
+     * @param results   The counters to add the result to.
+     */
+    private void playRound(int round, long seed, Player player1, Player player2, int size, int winStreak,
+                           RoundResults results) {
+        // The seeds of a round depend only on the tournament's seed and the round's number
+        SplittableRandom roundSeeds = new SplittableRandom(seed ^ (round * ROUND_SEED_STEP));
+        player1.setSeed(roundSeeds.nextLong());
+        player2.setSeed(roundSeeds.nextLong());
+        Game game;
+        if (round % 2 == 0) {
+            game = new Game(player1, player2, size, winStreak, renderer);
+        } else {
+            game = new Game(player2, player1, size, winStreak, renderer);
+        }
+        Mark winnerMark = game.run();
+        switch (winnerMark) {
+            case BLANK:
+                results.tieCounter.increment();
+                break;
+            case X:
+                if (round % 2 == 0) {
+                    results.playerWinCounter1.increment();
+                } else {
+                    results.playerWinCounter2.increment();
+                }
+                break;
+            case O:
+                if (round % 2 == 0) {
+                    results.playerWinCounter2.increment();
+                } else {
+                    results.playerWinCounter1.increment();
+                }
+                break;
+        }
+    }
+
+    /**
+     * The numbers of rounds won by each player and tied, counted by any number of threads at once.
+     */
+    private static final class RoundResults {
+        private final LongAdder playerWinCounter1 = new LongAdder();
+        private final LongAdder playerWinCounter2 = new LongAdder();
+        private final LongAdder tieCounter = new LongAdder();
     }
 
     /**
      * The main method to run the Tic-Tac-Toe tournament.
      * Accepts command line arguments for the number of rounds, board size, win streak, renderer type,
-     * and player names. Creates instances of the tournament components and initiates the tournament.
+     * and player names, optionally followed by the number of threads and the seed of the tournament.
+     * Creates instances of the tournament components and initiates the tournament.
      *
      * @param args Command line arguments specifying the tournament parameters.
      */
@@ -105,12 +219,21 @@ public class Tournament {
         Player player2 = new PlayerFactory().buildPlayer(playerName2);
         if (player1 == null || player2 == null) {
             System.out.println("Choose a player, and start again.\n" +
-                    "The players: [human, clever, whatever, genius]");
+                    "The players: [human, clever, whatever, genius, perfect, mcts]");
             return;
         }
 
+        // Rounds are played on several threads only without rendering, as renderers draw on a shared
+        // buffer, and without human players, who all read the same keyboard
+        int threads = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+        if (!(renderer instanceof VoidRenderer) || player1 instanceof HumanPlayer ||
+                player2 instanceof HumanPlayer) {
+            threads = 1;
+        }
+        long seed = args.length > 7 ? Long.parseLong(args[7]) : new Random().nextLong();
+
         // Create and run the tournament
         Tournament tournament = new Tournament(rounds, renderer, player1, player2);
-        tournament.playTournament(size, winStreak, playerName1, playerName2);
+        tournament.playTournament(size, winStreak, playerName1, playerName2, threads, seed);
     }
 }
@@ -4,6 +4,9 @@ import java.util.Random;
  * Represents a player in a Tic-Tac-Toe game that makes random moves without any specific strategy.
  */
 public class WhateverPlayer implements Player {
+    // Source of the player's random moves
+    private final Random random = new Random();
+
     WhateverPlayer() {
     }
 
@@ -17,15 +20,24 @@ public class WhateverPlayer implements Player {
      */
     @Override
     public void playTurn(Board board, Mark mark) {
-        Random rand = new Random();
         int row, col;
         while (true) {
-            row = rand.nextInt(board.getSize());
-            col = rand.nextInt(board.getSize());
+            row = random.nextInt(board.getSize());
+            col = random.nextInt(board.getSize());
             if (board.getMark(row, col) == Mark.BLANK) {
                 board.putMark(mark, row, col);
                 return;
             }
         }
     }
+
+    /**
+     * Seeds the player's random moves.
+     *
+     * @param seed The seed of the player's random choices.
+     */
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
 }
@@ -0,0 +1,218 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The lines of winStreak cells on a board, as masks over the board's bitboards.
+ * Cell (row, col) is bit row * size + col of the bitboard, counted across 64-bit words, so checking
+ * a line takes an AND and a compare for every word it spans. The lines through each cell are indexed
+ * too, so a move is checked against the at most 4 * winStreak lines it can have completed. The lines
+ * of each board size and win streak are computed once and shared by all the boards using them.
+ */
+final class WinLines {
+    // Row and column steps along a row, a column, a diagonal and an anti-diagonal
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    // Lines computed so far, by board size and win streak
+    private static final ConcurrentMap<Long, WinLines> CACHE = new ConcurrentHashMap<>();
+
+    // Number of lines on the board
+    private final int lineCount;
+
+    // Index of the first word mask of each line, followed by the number of word masks
+    private final int[] lineStarts;
+
+    // Word of the bitboard each word mask applies to, and the mask itself
+    private final int[] wordIndices;
+    private final long[] wordMasks;
+
+    // Index of the first line through each cell in cellLines, followed by the number of entries
+    private final int[] cellLineStarts;
+
+    // Lines through each cell, cell by cell
+    private final int[] cellLines;
+
+    /**
+     * Gets the lines of a board.
+     *
+     * @param size      The size of the board.
+     * @param winStreak The number of marks in a line, at least 1.
+     * @return The lines of every board of that size and win streak.
+     */
+    static WinLines of(int size, int winStreak) {
+        long key = ((long) size << Integer.SIZE) | winStreak;
+        return CACHE.computeIfAbsent(key, unused -> new WinLines(size, winStreak));
+    }
+
+    /**
+     * Gets the number of 64-bit words of a bitboard.
+     *
+     * @param size The size of the board.
+     * @return The number of words holding a bit for every cell.
+     */
+    static int wordCount(int size) {
+        return (size * size + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    // Private constructor masking every line of winStreak cells, in all four directions
+    private WinLines(int size, int winStreak) {
+        int boardWords = wordCount(size);
+        // Cells of a line are at most (winStreak - 1) * (size + 1) bits apart
+        int lineWords = Math.min(boardWords, (winStreak - 1) * (size + 1) / Long.SIZE + 2);
+        int maxLines = DIRECTIONS.length * size * Math.max(0, size - winStreak + 1);
+        int[] starts = new int[maxLines + 1];
+        int[] indices = new int[maxLines * lineWords];
+        long[] masks = new long[maxLines * lineWords];
+        long[] line = new long[boardWords];
+        int lines = 0;
+        int entries = 0;
+        for (int[] direction : DIRECTIONS) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    int lastRow = row + (winStreak - 1) * direction[0];
+                    int lastCol = col + (winStreak - 1) * direction[1];
+                    if (lastRow >= size || lastCol < 0 || lastCol >= size) {
+                        continue;
+                    }
+                    Arrays.fill(line, 0L);
+                    for (int step = 0; step < winStreak; step++) {
+                        int cell = (row + step * direction[0]) * size + col + step * direction[1];
+                        line[cell / Long.SIZE] |= 1L << cell;
+                    }
+                    starts[lines++] = entries;
+                    for (int word = 0; word < boardWords; word++) {
+                        if (line[word] != 0) {
+                            indices[entries] = word;
+                            masks[entries++] = line[word];
+                        }
+                    }
+                }
+            }
+        }
+        starts[lines] = entries;
+        this.lineCount = lines;
+        this.lineStarts = Arrays.copyOf(starts, lines + 1);
+        this.wordIndices = Arrays.copyOf(indices, entries);
+        this.wordMasks = Arrays.copyOf(masks, entries);
+        this.cellLineStarts = new int[size * size + 1];
+        this.cellLines = new int[lines * winStreak];
+        indexCellLines();
+    }
+
+    // Private method to list the lines through each cell, counting them before placing them
+    private void indexCellLines() {
+        int[] cellCounts = new int[cellLineStarts.length];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int line = 0; line < lineCount; line++) {
+                for (int entry = lineStarts[line]; entry < lineStarts[line + 1]; entry++) {
+                    for (long bits = wordMasks[entry]; bits != 0; bits &= bits - 1) {
+                        int cell = wordIndices[entry] * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                        if (pass == 0) {
+                            cellCounts[cell + 1]++;
+                        } else {
+                            cellLines[cellCounts[cell]++] = line;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int cell = 1; cell < cellCounts.length; cell++) {
+                    cellCounts[cell] += cellCounts[cell - 1];
+                }
+                System.arraycopy(cellCounts, 0, cellLineStarts, 0, cellCounts.length);
+            }
+        }
+    }
+
+    /**
+     * Checks if a bitboard of a single word fills any line through a cell.
+     *
+     * @param cell  The cell, row * size + col.
+     * @param bits  The bitboard of a board of up to 64 cells.
+     * @return True if every cell of some line through the cell is set, false otherwise.
+     */
+    boolean isAnyCompleteThrough(int cell, long bits) {
+        for (int entry = cellLineStarts[cell]; entry < cellLineStarts[cell + 1]; entry++) {
+            // On a board of a single word, line i has a single mask, at index i
+            long mask = wordMasks[cellLines[entry]];
+            if ((bits & mask) == mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a bitboard fills any line through a cell.
+     *
+     * @param cell  The cell, row * size + col.
+     * @param words The bitboard, split into 64-bit words.
+     * @return True if every cell of some line through the cell is set, false otherwise.
+     */
+    boolean isAnyCompleteThrough(int cell, long[] words) {
+        for (int entry = cellLineStarts[cell]; entry < cellLineStarts[cell + 1]; entry++) {
+            if (isComplete(cellLines[entry], words)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scores the lines of a board of a single word that are still open to one player or the other.
+     * A line holding c marks of only one player scores c * c for that player.
+     *
+     * @param own   The bitboard of the player to score for.
+     * @param other The bitboard of the opponent.
+     * @return The score of the player's open lines, less the score of the opponent's.
+     */
+    int scoreOpenLines(long own, long other) {
+        int score = 0;
+        for (int line = 0; line < lineCount; line++) {
+            int ownCount = Long.bitCount(own & wordMasks[line]);
+            int otherCount = Long.bitCount(other & wordMasks[line]);
+            if (otherCount == 0) {
+                score += ownCount * ownCount;
+            } else if (ownCount == 0) {
+                score -= otherCount * otherCount;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Scores the lines of a board that are still open to one player or the other.
+     * A line holding c marks of only one player scores c * c for that player.
+     *
+     * @param own   The bitboard of the player to score for, split into 64-bit words.
+     * @param other The bitboard of the opponent, split into 64-bit words.
+     * @return The score of the player's open lines, less the score of the opponent's.
+     */
+    int scoreOpenLines(long[] own, long[] other) {
+        int score = 0;
+        for (int line = 0; line < lineCount; line++) {
+            int ownCount = 0;
+            int otherCount = 0;
+            for (int entry = lineStarts[line]; entry < lineStarts[line + 1]; entry++) {
+                ownCount += Long.bitCount(own[wordIndices[entry]] & wordMasks[entry]);
+                otherCount += Long.bitCount(other[wordIndices[entry]] & wordMasks[entry]);
+            }
+            if (otherCount == 0) {
+                score += ownCount * ownCount;
+            } else if (ownCount == 0) {
+                score -= otherCount * otherCount;
+            }
+        }
+        return score;
+    }
+
+    // Private method to check if a bitboard sets every cell of a line
+    private boolean isComplete(int line, long[] words) {
+        for (int entry = lineStarts[line]; entry < lineStarts[line + 1]; entry++) {
+            if ((words[wordIndices[entry]] & wordMasks[entry]) != wordMasks[entry]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
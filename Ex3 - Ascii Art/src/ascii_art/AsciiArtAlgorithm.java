@@ -1,21 +1,63 @@
 package ascii_art;
 
+import ascii_output.CharGrid;
+import image.BrightnessPyramid;
+import image.EdgeDirection;
 import image.Image;
 import image.ImageRenderer;
+import image.TileBrightnessCache;
+import image_char_matching.CharMatcherSnapshot;
+import image_char_matching.SubCellEncoder;
 import image_char_matching.SubImgCharMatcher;
 
-import java.awt.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * An algorithm to convert an image into ASCII art.
  */
 public class AsciiArtAlgorithm {
+    // Floyd-Steinberg weights of the quantization error passed to each neighbour
+    private static final double RIGHT_ERROR_WEIGHT = 7.0 / 16;
+    private static final double BELOW_LEFT_ERROR_WEIGHT = 3.0 / 16;
+    private static final double BELOW_ERROR_WEIGHT = 5.0 / 16;
+    private static final double BELOW_RIGHT_ERROR_WEIGHT = 1.0 / 16;
+    private static final char NO_STRUCTURE_GLYPH = '\0';
+    // Most tile grids whose tiles are kept for regions of the image
+    private static final int VIEWPORT_GRIDS = 8;
+    private static final char[] EDGE_GLYPHS = {'-', '_', '|', '/', '\\'};
     private final Image image;
     private final SubImgCharMatcher imgCharMatcher;
+    private CharMatcherSnapshot charset;
     private static String imgPath = null;
     private static int resolution = 0;
     private static double[] imageBrightness;
+    private static EdgeDirection[] tileEdges;
+    private static long[] tileMasks;
+    // Tiles of the image's regions by grid (tile side, origin column and row), least recently used first
+    private static final LinkedHashMap<List<Integer>, TileBrightnessCache> viewportTiles =
+            new LinkedHashMap<List<Integer>, TileBrightnessCache>(VIEWPORT_GRIDS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Integer>, TileBrightnessCache> eldest) {
+                    return size() > VIEWPORT_GRIDS;
+                }
+            };
     private boolean didPhotoOrResChange;
+    private boolean dithering;
+    private boolean edgeGlyphs;
+    private boolean shapeMatching;
+    private SubCellEncoder subCellEncoder; // null to match chars from the charset
+    private int viewportX;
+    private int viewportY;
+    private int viewportWidth;
+    private int viewportHeight;
+    private int viewportColumns; // 0 to render the whole image
+    private int gridWidth;
+    private int gridHeight;
+    private double[] gridBrightness;
+    private boolean brightnessOnly; // Whether the grid being matched has no edges or masks computed
 
 
     /**
@@ -36,26 +78,399 @@ public class AsciiArtAlgorithm {
         }
     }
 
+    /**
+     * Sets whether to diffuse the quantization error of each tile to its neighbours
+     * (Floyd-Steinberg dithering) when matching characters.
+     *
+     * @param dithering true to dither, false to match every tile on its own.
+     */
+    void setDithering(boolean dithering) {
+        this.dithering = dithering;
+    }
+
+    /**
+     * Sets whether tiles crossed by a strong edge are drawn with a line character in the edge's
+     * direction ('-', '_', '|', '/' or '\') instead of a character matched by brightness.
+     *
+     * @param edgeGlyphs true to draw edges with line characters.
+     */
+    void setEdgeGlyphs(boolean edgeGlyphs) {
+        this.edgeGlyphs = edgeGlyphs;
+    }
+
+    /**
+     * Sets whether tiles are matched to the character whose glyph shape is closest to the tile's
+     * bright and dark areas, instead of by brightness alone. Tiles without any structure
+     * are still matched by brightness.
+     *
+     * @param shapeMatching true to match by glyph shape.
+     */
+    void setShapeMatching(boolean shapeMatching) {
+        this.shapeMatching = shapeMatching;
+    }
+
+    /**
+     * Sets whether every char of the ASCII art encodes a block of sub-cells of the image, such as
+     * the 2x4 dots of a Braille pattern, instead of being matched from the charset. The sub-cells
+     * are split from the image the way the tiles are, and the charset, dithering, edge glyphs and
+     * shape matching do not apply. A region of the image is still matched from the charset.
+     *
+     * @param subCellEncoder The encoder of the blocks, or null to match chars from the charset.
+     */
+    void setSubCellEncoder(SubCellEncoder subCellEncoder) {
+        this.subCellEncoder = subCellEncoder;
+    }
+
+    /**
+     * Sets a region of the image to render instead of the whole image. The region is split into
+     * square tiles on a grid anchored at the region's corner, the last row and column of tiles
+     * reaching past the region if its sides are not a whole number of tiles. The region's corner is
+     * kept to the pixel, not snapped to a tile. The tiles of the last few grids (tile size and corner
+     * modulo the tile size) are kept, so a region on any of them, such as when panning back and
+     * forth, reuses the tiles already computed; only the tiles under the region not computed yet are.
+     * Edge glyphs and shape matching do not apply to a region.
+     *
+     * @param x       The left column of the region, in image pixels.
+     * @param y       The top row of the region, in image pixels.
+     * @param width   The width of the region, in image pixels.
+     * @param height  The height of the region, in image pixels.
+     * @param columns The number of characters in a row of the ASCII art.
+     */
+    void setViewport(int x, int y, int width, int height, int columns) {
+        viewportX = x;
+        viewportY = y;
+        viewportWidth = width;
+        viewportHeight = height;
+        viewportColumns = columns;
+    }
+
     /**
      * Runs the ASCII art algorithm.
      *
-     * @return A 2D array representing the ASCII art.
+     * @return A grid of the ASCII art chars.
      * @throws EmptyCharset if the character set used for matching is empty.
      */
-    public char[][] run() throws EmptyCharset {
-        if (imgCharMatcher.getCharsetSize() == 0) {
-            throw new EmptyCharset();
+    public CharGrid run() throws EmptyCharset {
+        if (subCellEncoder != null && viewportColumns == 0) {
+            dropStaleTiles();
+            return encodeSubCells();
         }
-        if (didPhotoOrResChange) {
+        // The whole image is matched against the charset as it is now, even if it changes meanwhile.
+        takeCharsetSnapshot();
+        brightnessOnly = viewportColumns > 0;
+        if (brightnessOnly) {
+            dropStaleTiles();
+            return matchChars(calculateViewportBrightness());
+        }
+        if (didPhotoOrResChange || imageBrightness == null || (edgeGlyphs && tileEdges == null)) {
             ImageRenderer imageRenderer = new ImageRenderer(image);
+            imageRenderer.setEdgeDetection(edgeGlyphs);
             imageRenderer.resizeImage();
-            Color[][][] smallImages = imageRenderer.splitToSmallImages(resolution);
-            imageBrightness = imageRenderer.calculateImageBrightness(smallImages);
+            imageBrightness = imageRenderer.calculateImageBrightness(resolution);
+            tileEdges = imageRenderer.getTileEdges();
+            if (didPhotoOrResChange) {
+                tileMasks = null;
+            }
         }
-        char[][] asciiImage = new char[resolution][resolution];
-        for (int i = 0; i < resolution * resolution; i++) {
-            asciiImage[i / resolution][i % resolution] =
-                    imgCharMatcher.getCharByImageBrightness(imageBrightness[i]);
+        if (shapeMatching && tileMasks == null) {
+            ImageRenderer imageRenderer = new ImageRenderer(image);
+            imageRenderer.resizeImage();
+            tileMasks = imageRenderer.calculateTileMasks(resolution, SubImgCharMatcher.SHAPE_GRID_SIZE);
+        }
+        gridWidth = resolution;
+        gridHeight = resolution;
+        return matchChars(imageBrightness);
+    }
+
+    /**
+     * Runs the ASCII art algorithm on the whole image at several resolutions, each a power of two
+     * times the others, reading the image once. The brightness of the finest resolution is
+     * calculated from the image, each coarser one is summed from it, and all of them are matched
+     * against the same charset. Edge glyphs and shape matching do not apply.
+     *
+     * @param resolutions The resolutions, each a power of two.
+     * @return A grid of the ASCII art chars for each resolution, in the order of resolutions.
+     * @throws EmptyCharset if the character set used for matching is empty.
+     */
+    CharGrid[] runPyramid(int[] resolutions) throws EmptyCharset {
+        takeCharsetSnapshot();
+        brightnessOnly = true;
+        dropStaleTiles();
+        int finest = Arrays.stream(resolutions).max().getAsInt();
+        int coarsest = Arrays.stream(resolutions).min().getAsInt();
+        ImageRenderer imageRenderer = new ImageRenderer(image);
+        imageRenderer.resizeImage();
+        BrightnessPyramid pyramid = imageRenderer.calculateBrightnessPyramid(finest, coarsest);
+        CharGrid[] grids = new CharGrid[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            gridWidth = resolutions[i];
+            gridHeight = resolutions[i];
+            grids[i] = matchChars(pyramid.getBrightness(resolutions[i]));
+        }
+        return grids;
+    }
+
+    /**
+     * Drops the whole image's tiles if the image or the resolution changed, for a run that does not
+     * compute them, so the next full render recomputes them.
+     */
+    private void dropStaleTiles() {
+        if (didPhotoOrResChange) {
+            imageBrightness = null;
+            tileMasks = null;
+        }
+    }
+
+    /**
+     * Encodes every block of sub-cells of the image into a char. The brightness plane of the
+     * sub-cells is calculated at the finest resolution the image allows, up to the sub-cells',
+     * and stretched to the full brightness range.
+     *
+     * @return A grid of the encoded chars, resolution by resolution.
+     */
+    private CharGrid encodeSubCells() {
+        int planeWidth = resolution * subCellEncoder.getSubColumns();
+        int planeHeight = resolution * subCellEncoder.getSubRows();
+        ImageRenderer imageRenderer = new ImageRenderer(image);
+        imageRenderer.resizeImage();
+        int squareResolution = Math.min(Math.max(planeWidth, planeHeight),
+                imageRenderer.getMaxResolution());
+        double[] plane = resamplePlane(imageRenderer.calculateImageBrightness(squareResolution),
+                squareResolution, planeWidth, planeHeight);
+        stretchToFullRange(plane);
+        CharGrid asciiImage = new CharGrid(resolution, resolution, subCellEncoder.getGlyphs());
+        for (int row = 0; row < resolution; row++) {
+            for (int col = 0; col < resolution; col++) {
+                asciiImage.set(row, col, subCellEncoder.encode(plane, planeWidth, col, row));
+            }
+        }
+        return asciiImage;
+    }
+
+    /**
+     * Stretches brightness values linearly so the darkest is 0 and the brightest is 1, the way
+     * the brightness of the charset's chars is normalized.
+     *
+     * @param brightness The brightness values, stretched in place. Equal values are left as they are.
+     */
+    private static void stretchToFullRange(double[] brightness) {
+        double min = Arrays.stream(brightness).min().orElse(0);
+        double max = Arrays.stream(brightness).max().orElse(0);
+        if (max <= min) {
+            return;
+        }
+        for (int i = 0; i < brightness.length; i++) {
+            brightness[i] = (brightness[i] - min) / (max - min);
+        }
+    }
+
+    /**
+     * Resamples a square grid of tile brightness to a grid of another size, averaging the tiles
+     * a sample covers, or repeating a tile over the samples it covers. All sizes are powers of two.
+     *
+     * @param square           The brightness of each tile of the square grid, row by row.
+     * @param squareResolution The number of tiles in a row and in a column of the square grid.
+     * @param width            The number of samples in a row.
+     * @param height           The number of samples in a column.
+     * @return The brightness of each sample, row by row.
+     */
+    private static double[] resamplePlane(double[] square, int squareResolution, int width, int height) {
+        int spanX = Math.max(1, squareResolution / width);
+        int spanY = Math.max(1, squareResolution / height);
+        double[] plane = new double[width * height];
+        for (int y = 0; y < height; y++) {
+            int top = (int) ((long) y * squareResolution / height);
+            for (int x = 0; x < width; x++) {
+                int left = (int) ((long) x * squareResolution / width);
+                double sum = 0;
+                for (int tileRow = top; tileRow < top + spanY; tileRow++) {
+                    for (int tileCol = left; tileCol < left + spanX; tileCol++) {
+                        sum += square[tileRow * squareResolution + tileCol];
+                    }
+                }
+                plane[y * width + x] = sum / (spanX * spanY);
+            }
+        }
+        return plane;
+    }
+
+    /**
+     * Takes the snapshot of the charset the next grid is matched against.
+     *
+     * @throws EmptyCharset if the charset is empty.
+     */
+    private void takeCharsetSnapshot() throws EmptyCharset {
+        charset = imgCharMatcher.getSnapshot();
+        if (charset.getCharsetSize() == 0) {
+            throw new EmptyCharset();
+        }
+    }
+
+    /**
+     * Calculates the brightness of the tiles of the viewport, reusing the ones already computed
+     * for the same image, tile size and grid, kept for the last VIEWPORT_GRIDS grids used.
+     * The columns are at most one per pixel, and the tiles are as small as they can be while
+     * covering the viewport in that many columns.
+     *
+     * @return The brightness of each tile of the viewport, row by row.
+     */
+    private double[] calculateViewportBrightness() {
+        int columns = Math.min(viewportColumns, viewportWidth);
+        int tileSide = (viewportWidth + columns - 1) / columns;
+        gridWidth = (viewportWidth + tileSide - 1) / tileSide;
+        gridHeight = (viewportHeight + tileSide - 1) / tileSide;
+        // The grid is anchored at the viewport's corner, kept within the image's first tile
+        int originX = viewportX % tileSide;
+        int originY = viewportY % tileSide;
+        // All the kept grids are of one image, so the tiles of another are dropped together
+        if (!viewportTiles.isEmpty() && viewportTiles.values().iterator().next().getImage() != image) {
+            viewportTiles.clear();
+        }
+        TileBrightnessCache tiles = viewportTiles.computeIfAbsent(List.of(tileSide, originX, originY),
+                grid -> new TileBrightnessCache(image, tileSide, originX, originY));
+        return tiles.getBrightness(viewportX / tileSide, viewportY / tileSide, gridWidth, gridHeight);
+    }
+
+    /**
+     * Matches a character to every tile of the grid.
+     *
+     * @param brightness The brightness of each tile, row by row.
+     * @return A grid of the ASCII art chars.
+     */
+    private CharGrid matchChars(double[] brightness) {
+        gridBrightness = brightness;
+        if (dithering) {
+            return matchCharsDithered();
+        }
+        CharGrid asciiImage = new CharGrid(gridWidth, gridHeight, getPalette());
+        for (int i = 0; i < gridWidth * gridHeight; i++) {
+            char structureGlyph = getStructureGlyph(i);
+            asciiImage.set(i / gridWidth, i % gridWidth, structureGlyph != NO_STRUCTURE_GLYPH ?
+                    structureGlyph : charset.getCharByImageBrightness(gridBrightness[i]));
+        }
+        return asciiImage;
+    }
+
+    /**
+     * Gets all the chars the ASCII art may hold: the charset, and the edge glyphs if they are on.
+     *
+     * @return The distinct chars, in ascending order.
+     */
+    private char[] getPalette() {
+        char[] chars = charset.getChars();
+        if (!edgeGlyphs || brightnessOnly) {
+            return chars;
+        }
+        char[] merged = Arrays.copyOf(chars, chars.length + EDGE_GLYPHS.length);
+        System.arraycopy(EDGE_GLYPHS, 0, merged, chars.length, EDGE_GLYPHS.length);
+        Arrays.sort(merged);
+        int distinct = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (i == 0 || merged[i] != merged[i - 1]) {
+                merged[distinct++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, distinct);
+    }
+
+    /**
+     * Gets the character for a tile's structure: the line character for the edge crossing it when
+     * edge glyphs are on, otherwise the closest glyph shape when shape matching is on.
+     *
+     * @param tile The index of the tile.
+     * @return The character, or NO_STRUCTURE_GLYPH if the tile should be matched by brightness.
+     */
+    private char getStructureGlyph(int tile) {
+        if (brightnessOnly) {
+            return NO_STRUCTURE_GLYPH;
+        }
+        char edgeGlyph = edgeGlyphs ? getEdgeGlyph(tileEdges[tile]) : NO_STRUCTURE_GLYPH;
+        if (edgeGlyph != NO_STRUCTURE_GLYPH || !shapeMatching) {
+            return edgeGlyph;
+        }
+        int maskOffset = tile * SubImgCharMatcher.SHAPE_MASK_WORDS;
+        if (isUniformMask(maskOffset)) {
+            return NO_STRUCTURE_GLYPH;
+        }
+        return charset.getCharByShape(tileMasks, maskOffset);
+    }
+
+    /**
+     * Checks whether a tile's shape mask has all of its cells bright or all of them dark.
+     *
+     * @param maskOffset The index in tileMasks of the tile's first word.
+     * @return true if the mask has no structure to match.
+     */
+    private boolean isUniformMask(int maskOffset) {
+        long allCells = -1L;
+        long anyCell = 0;
+        for (int word = 0; word < SubImgCharMatcher.SHAPE_MASK_WORDS; word++) {
+            allCells &= tileMasks[maskOffset + word];
+            anyCell |= tileMasks[maskOffset + word];
+        }
+        return anyCell == 0 || allCells == -1L;
+    }
+
+    /**
+     * Gets the line character for an edge direction.
+     *
+     * @param edgeDirection The direction of the edge crossing a tile.
+     * @return The line character, or NO_STRUCTURE_GLYPH if there is no edge.
+     */
+    private char getEdgeGlyph(EdgeDirection edgeDirection) {
+        switch (edgeDirection) {
+        case HORIZONTAL:
+            return '-';
+        case BOTTOM:
+            return '_';
+        case VERTICAL:
+            return '|';
+        case RISING:
+            return '/';
+        case FALLING:
+            return '\\';
+        default:
+            return NO_STRUCTURE_GLYPH;
+        }
+    }
+
+    /**
+     * Matches a character to every tile while carrying each tile's quantization error
+     * (its brightness minus the matched character's) to the neighbouring tiles to its right and below.
+     * Only the errors of the current and the next row are kept.
+     *
+     * @return A grid of the ASCII art chars.
+     */
+    private CharGrid matchCharsDithered() {
+        CharGrid asciiImage = new CharGrid(gridWidth, gridHeight, getPalette());
+        // Padded by one tile on each side, so neighbours need no bound checks
+        double[] rowErrors = new double[gridWidth + 2];
+        double[] nextRowErrors = new double[gridWidth + 2];
+        for (int row = 0; row < gridHeight; row++) {
+            for (int col = 0; col < gridWidth; col++) {
+                char structureGlyph = getStructureGlyph(row * gridWidth + col);
+                if (structureGlyph != NO_STRUCTURE_GLYPH) {
+                    // Structure is not matched on the brightness scale, so these tiles diffuse nothing.
+                    asciiImage.set(row, col, structureGlyph);
+                    continue;
+                }
+                double brightness = gridBrightness[row * gridWidth + col] + rowErrors[col + 1];
+                char matched = charset.getCharByImageBrightness(brightness);
+                asciiImage.set(row, col, matched);
+                double error = brightness - charset.getCharNormedBrightness(matched);
+                if (Double.isNaN(error)) {
+                    // A single brightness level in the charset, nothing to diffuse.
+                    continue;
+                }
+                rowErrors[col + 2] += error * RIGHT_ERROR_WEIGHT;
+                nextRowErrors[col] += error * BELOW_LEFT_ERROR_WEIGHT;
+                nextRowErrors[col + 1] += error * BELOW_ERROR_WEIGHT;
+                nextRowErrors[col + 2] += error * BELOW_RIGHT_ERROR_WEIGHT;
+            }
+            double[] temp = rowErrors;
+            rowErrors = nextRowErrors;
+            nextRowErrors = temp;
+            Arrays.fill(nextRowErrors, 0.0);
         }
         return asciiImage;
     }
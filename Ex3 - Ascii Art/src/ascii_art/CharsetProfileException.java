@@ -0,0 +1,14 @@
+package ascii_art;
+
+/**
+ * Exception thrown when a charset profile cannot be saved or loaded.
+ */
+public class CharsetProfileException extends Exception {
+    /**
+     * Constructs a new CharsetProfileException with the specified detail message.
+     * @param message the detail message (which is saved for later retrieval by the getMessage() method)
+     */
+    public CharsetProfileException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,104 @@
+package ascii_art;
+
+import image_char_matching.CharMatcherSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Named charset profiles. Each profile is a compiled charset kept in memory and persisted to a file
+ * of its own, so switching to a profile, even one saved in an earlier session, renders no glyph.
+ */
+class CharsetProfiles {
+    private static final String PROFILE_EXTENSION = ".charset";
+
+    private final File directory; // Directory the profile files are kept in
+    private final TreeMap<String, CharMatcherSnapshot> profiles; // Profiles saved or loaded so far
+
+    /**
+     * Constructs a CharsetProfiles object over a directory of profile files.
+     *
+     * @param directory The directory the profile files are kept in, created on the first save.
+     */
+    CharsetProfiles(String directory) {
+        this.directory = new File(directory);
+        this.profiles = new TreeMap<String, CharMatcherSnapshot>();
+    }
+
+    /**
+     * Saves a compiled charset under a name, replacing any profile of that name.
+     *
+     * @param name     The profile name.
+     * @param snapshot The compiled charset.
+     * @throws IOException If the profile file could not be written.
+     */
+    void save(String name, CharMatcherSnapshot snapshot) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(directory.getPath());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(getProfileFile(name))))) {
+            snapshot.writeTo(out);
+        }
+        profiles.put(name, snapshot);
+    }
+
+    /**
+     * Loads the compiled charset of a profile, reading its file only the first time.
+     *
+     * @param name The profile name.
+     * @return The compiled charset, or null if there is no such profile.
+     * @throws IOException If the profile file could not be read or does not hold a valid charset.
+     */
+    CharMatcherSnapshot load(String name) throws IOException {
+        CharMatcherSnapshot snapshot = profiles.get(name);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        File file = getProfileFile(name);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            snapshot = CharMatcherSnapshot.readFrom(in, file.length());
+        }
+        profiles.put(name, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Gets the names of all profiles, in memory or in the directory.
+     *
+     * @return The profile names, sorted.
+     */
+    TreeSet<String> getNames() {
+        TreeSet<String> names = new TreeSet<String>(profiles.keySet());
+        String[] fileNames = directory.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileName.endsWith(PROFILE_EXTENSION)) {
+                    names.add(fileName.substring(0, fileName.length() - PROFILE_EXTENSION.length()));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Gets the file a profile is persisted to.
+     *
+     * @param name The profile name.
+     * @return The profile file.
+     */
+    private File getProfileFile(String name) {
+        return new File(directory, name + PROFILE_EXTENSION);
+    }
+}
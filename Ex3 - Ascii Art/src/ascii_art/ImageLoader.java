@@ -0,0 +1,86 @@
+package ascii_art;
+
+import image.Image;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes images on background threads, so the shell does not wait for an image until it uses it.
+ * Images may also be prefetched before they are asked for: the decodes of the latest capacity
+ * prefetched paths are kept until taken, and older ones are dropped.
+ */
+class ImageLoader {
+    private static final String DECODER_THREAD_NAME = "image-decoder";
+
+    private final ExecutorService decoders;
+    private final LinkedHashMap<String, Future<Image>> prefetched; // Decodes not taken yet, oldest first
+
+    /**
+     * Constructs a loader whose threads do not keep the program alive.
+     *
+     * @param threads  The number of images decoded at once.
+     * @param capacity The most prefetched images kept at once.
+     */
+    ImageLoader(int threads, int capacity) {
+        this.decoders = Executors.newFixedThreadPool(threads, task -> {
+            Thread decoder = new Thread(task, DECODER_THREAD_NAME);
+            decoder.setDaemon(true);
+            return decoder;
+        });
+        this.prefetched = new LinkedHashMap<String, Future<Image>>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Future<Image>> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                eldest.getValue().cancel(true);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Starts decoding an image ahead of time, unless it is already being prefetched.
+     *
+     * @param path The image file.
+     */
+    void prefetch(String path) {
+        if (!prefetched.containsKey(path)) {
+            prefetched.put(path, decoders.submit(() -> new Image(path)));
+        }
+    }
+
+    /**
+     * Gets the decode of an image, taking it from the prefetched ones or starting it.
+     *
+     * @param path The image file.
+     * @return The decode, done or still running.
+     */
+    Future<Image> load(String path) {
+        Future<Image> decoding = prefetched.remove(path);
+        return decoding != null ? decoding : decoders.submit(() -> new Image(path));
+    }
+
+    /**
+     * Waits for a decode to finish.
+     *
+     * @param decoding The decode.
+     * @return The image.
+     * @throws IOException          If the image could not be read or decoded.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    static Image await(Future<Image> decoding) throws IOException, InterruptedException {
+        try {
+            return decoding.get();
+        } catch (ExecutionException e) {
+            // Unsupported formats are read as null, and fail in Image with a runtime exception
+            throw new IOException(e.getCause());
+        }
+    }
+}
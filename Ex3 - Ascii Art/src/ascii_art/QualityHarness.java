@@ -0,0 +1,437 @@
+package ascii_art;
+
+import ascii_output.CharGrid;
+import image.Image;
+import image.ImageRenderer;
+import image_char_matching.CharConverter;
+import image_char_matching.SubCellEncoder;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures how faithful the ASCII art of an image is, next to what producing it costs, for
+ * resolutions, charsets and conversion modes.
+ * Each configuration's ASCII art is drawn back to pixels with the glyphs CharConverter renders for
+ * matching, and compared with the source image split into the same tiles at the same scale:
+ * by SSIM over sliding 8x8 windows, and by PSNR. The conversion is timed and its peak heap use
+ * measured as by ScalabilityHarness, and every configuration is written as a row of a CSV file.
+ * Given a quality bar, the cheapest configuration meeting it is reported too.
+ * <p>
+ * Usage: QualityHarness [--image cat.jpeg] [--resolutions 32,64,128] [--charsets digits,letters,ascii]
+ * [--modes brightness,dither,shape,edges,braille,halfblock] [--repeats 3] [--min-ssim 0.5]
+ * [--csv quality.csv]
+ * <p>
+ * The glyph brightness is compared as drawn, so a charset without dark glyphs loses quality even
+ * where it matches the image's shapes well.
+ */
+public class QualityHarness {
+    private static final String DEFAULT_IMAGE = "cat.jpeg";
+    private static final String DEFAULT_RESOLUTIONS = "32,64,128";
+    private static final String DEFAULT_CHARSETS = "digits,letters,ascii";
+    private static final String DEFAULT_MODES = "brightness,dither,shape,edges,braille,halfblock";
+    private static final int DEFAULT_REPEATS = 3;
+    private static final String DEFAULT_CSV = "quality.csv";
+    private static final String CSV_HEADER = "resolution,charset,charset_size,mode," +
+            "wall_ms,peak_heap_mb,gc_count,gc_ms,ssim,psnr_db";
+    private static final String USAGE = "Usage: QualityHarness [--image file] [--resolutions 32,64,128] " +
+            "[--charsets digits,letters,ascii] [--modes brightness,dither,shape,edges,braille,halfblock] " +
+            "[--repeats 3] [--min-ssim 0.5] [--csv file]";
+    private static final String CHEAPEST_MSG = "Cheapest configuration with SSIM >= %.3f: resolution %d, " +
+            "charset %s, mode %s (%.1f ms).";
+    private static final String NONE_MEETS_MSG = "No configuration has SSIM >= %.3f.";
+    private static final int GLYPH_SIZE = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    private static final int SSIM_WINDOW = 8;
+    // SSIM stabilizing constants, (0.01 L)^2 and (0.03 L)^2 for a dynamic range L of 1
+    private static final double SSIM_C1 = 0.01 * 0.01;
+    private static final double SSIM_C2 = 0.03 * 0.03;
+    private static final char FIRST_PRINTABLE = ' ';
+    private static final char LAST_PRINTABLE = '~';
+
+    private final Image image;
+    private final int repeats;
+    private final HashMap<String, SubImgCharMatcher> matchers; // By charset name
+    private final HashMap<Character, boolean[][]> glyphs; // Glyph bitmaps rendered so far
+    private int runCount; // Runs so far, for naming each run uniquely
+
+    /**
+     * Constructs a harness for an image.
+     *
+     * @param image   The image.
+     * @param repeats The number of runs each configuration is timed over.
+     */
+    private QualityHarness(Image image, int repeats) {
+        this.image = image;
+        this.repeats = repeats;
+        this.matchers = new HashMap<String, SubImgCharMatcher>();
+        this.glyphs = new HashMap<Character, boolean[][]>();
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args The command-line arguments, as described in the class comment.
+     */
+    public static void main(String[] args) {
+        String imagePath = DEFAULT_IMAGE;
+        int[] resolutions;
+        String charsets = DEFAULT_CHARSETS;
+        String modes = DEFAULT_MODES;
+        int repeats = DEFAULT_REPEATS;
+        double minSsim = Double.NaN;
+        String csv = DEFAULT_CSV;
+        try {
+            resolutions = ScalabilityHarness.parseResolutions(DEFAULT_RESOLUTIONS);
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                case "--image":
+                    imagePath = args[i + 1];
+                    break;
+                case "--resolutions":
+                    resolutions = ScalabilityHarness.parseResolutions(args[i + 1]);
+                    break;
+                case "--charsets":
+                    charsets = args[i + 1];
+                    break;
+                case "--modes":
+                    modes = args[i + 1];
+                    break;
+                case "--repeats":
+                    repeats = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--min-ssim":
+                    minSsim = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--csv":
+                    csv = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+            for (String charset : charsets.split(",")) {
+                getCharset(charset);
+            }
+            for (String mode : modes.split(",")) {
+                if (!Arrays.asList(DEFAULT_MODES.split(",")).contains(mode)) {
+                    throw new IllegalArgumentException(mode);
+                }
+            }
+            if (repeats < 1) {
+                throw new IllegalArgumentException(String.valueOf(repeats));
+            }
+        } catch (RuntimeException e) {
+            System.out.println(USAGE);
+            return;
+        }
+        QualityHarness harness;
+        try {
+            harness = new QualityHarness(new Image(imagePath), repeats);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(csv)) {
+            writer.println(CSV_HEADER);
+            List<String[]> rows = harness.runAll(resolutions, charsets.split(","),
+                    modes.split(","), writer);
+            if (!Double.isNaN(minSsim)) {
+                reportCheapest(rows, minSsim);
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the chars of a named charset.
+     *
+     * @param name The name: digits, letters or ascii.
+     * @return The chars.
+     * @throws IllegalArgumentException If there is no charset of that name.
+     */
+    private static char[] getCharset(String name) {
+        switch (name) {
+        case "digits":
+            return "0123456789".toCharArray();
+        case "letters":
+            return "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+        case "ascii":
+            char[] chars = new char[LAST_PRINTABLE - FIRST_PRINTABLE + 1];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (FIRST_PRINTABLE + i);
+            }
+            return chars;
+        default:
+            throw new IllegalArgumentException(name);
+        }
+    }
+
+    /**
+     * Runs every configuration, writing a CSV row for each and echoing it to the console.
+     *
+     * @param resolutions The resolutions, each a power of two.
+     * @param charsets    The charset names.
+     * @param modes       The conversion modes.
+     * @param writer      The CSV writer.
+     * @return The columns of every row.
+     */
+    private List<String[]> runAll(int[] resolutions, String[] charsets, String[] modes,
+                                  PrintWriter writer) {
+        List<String[]> rows = new ArrayList<String[]>();
+        for (int resolution : resolutions) {
+            // The shell never goes past one character per pixel
+            if (resolution > image.getWidth()) {
+                continue;
+            }
+            ImageRenderer imageRenderer = new ImageRenderer(image);
+            imageRenderer.resizeImage();
+            int cellPixels = Math.min(GLYPH_SIZE, imageRenderer.getMaxResolution() / resolution);
+            double[] reference = imageRenderer.calculateImageBrightness(resolution * cellPixels);
+            for (String charset : charsets) {
+                for (String mode : modes) {
+                    String row = runConfiguration(resolution, charset, mode, reference, cellPixels);
+                    writer.println(row);
+                    writer.flush();
+                    System.out.println(row);
+                    rows.add(row.split(","));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Times a configuration over the repeats, and measures the quality of its ASCII art.
+     *
+     * @param resolution The resolution.
+     * @param charset    The charset name.
+     * @param mode       The conversion mode.
+     * @param reference  The source image's brightness, split into cellPixels tiles per char.
+     * @param cellPixels The number of pixels on each side of a char when comparing.
+     * @return The CSV row.
+     */
+    private String runConfiguration(int resolution, String charset, String mode, double[] reference,
+                                    int cellPixels) {
+        SubImgCharMatcher matcher = matchers.computeIfAbsent(charset,
+                name -> new SubImgCharMatcher(getCharset(name)));
+        RunMeter meter = new RunMeter();
+        double bestWallMs = Double.MAX_VALUE;
+        double peakHeapMb = 0;
+        long gcCount = 0;
+        long gcMs = 0;
+        CharGrid grid = null;
+        for (int repeat = 0; repeat < repeats; repeat++) {
+            AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, resolution, matcher,
+                    "run" + runCount++);
+            configure(algorithm, mode);
+            meter.start();
+            try {
+                grid = algorithm.run();
+            } catch (EmptyCharset e) {
+                return String.format("%d,%s,%d,%s,,,,,,", resolution, charset, matcher.getCharsetSize(), mode);
+            }
+            meter.stop();
+            bestWallMs = Math.min(bestWallMs, meter.getWallMs());
+            peakHeapMb = Math.max(peakHeapMb, meter.getPeakHeapMb());
+            gcCount += meter.getGcCount();
+            gcMs += meter.getGcMs();
+        }
+        double[] rendered = renderGlyphs(grid, cellPixels);
+        int side = resolution * cellPixels;
+        return String.format(Locale.ROOT, "%d,%s,%d,%s,%.1f,%.1f,%d,%d,%.4f,%.2f", resolution, charset,
+                matcher.getCharsetSize(), mode, bestWallMs, peakHeapMb, gcCount, gcMs,
+                ssim(reference, rendered, side, side), psnr(reference, rendered));
+    }
+
+    /**
+     * Sets an algorithm's options for a conversion mode.
+     *
+     * @param algorithm The algorithm.
+     * @param mode      The conversion mode.
+     */
+    private static void configure(AsciiArtAlgorithm algorithm, String mode) {
+        switch (mode) {
+        case "dither":
+            algorithm.setDithering(true);
+            break;
+        case "shape":
+            algorithm.setShapeMatching(true);
+            break;
+        case "edges":
+            algorithm.setEdgeGlyphs(true);
+            break;
+        case "braille":
+            algorithm.setSubCellEncoder(SubCellEncoder.BRAILLE);
+            break;
+        case "halfblock":
+            algorithm.setSubCellEncoder(SubCellEncoder.HALF_BLOCK);
+            break;
+        default:
+            // Matched by brightness alone
+        }
+    }
+
+    /**
+     * Draws ASCII art back to pixels, each char as its glyph, black ink on white, averaged down
+     * to cellPixels pixels on each side.
+     *
+     * @param grid       The ASCII art.
+     * @param cellPixels The number of pixels on each side of a char, a power of two up to GLYPH_SIZE.
+     * @return The brightness of each pixel in [0, 1], row by row.
+     */
+    private double[] renderGlyphs(CharGrid grid, int cellPixels) {
+        int width = grid.getWidth() * cellPixels;
+        int blockSide = GLYPH_SIZE / cellPixels;
+        double[] pixels = new double[width * grid.getHeight() * cellPixels];
+        for (int row = 0; row < grid.getHeight(); row++) {
+            for (int col = 0; col < grid.getWidth(); col++) {
+                // CharConverter marks the cells the glyph leaves blank as true
+                boolean[][] glyph = glyphs.computeIfAbsent(grid.get(row, col),
+                        CharConverter::convertToBoolArray);
+                for (int y = 0; y < cellPixels; y++) {
+                    for (int x = 0; x < cellPixels; x++) {
+                        int blank = 0;
+                        for (int dy = 0; dy < blockSide; dy++) {
+                            for (int dx = 0; dx < blockSide; dx++) {
+                                blank += glyph[y * blockSide + dy][x * blockSide + dx] ? 1 : 0;
+                            }
+                        }
+                        pixels[(row * cellPixels + y) * width + col * cellPixels + x] =
+                                (double) blank / (blockSide * blockSide);
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Calculates the mean structural similarity (SSIM) of two images over every SSIM_WINDOW square
+     * window. The sums of each window are kept running: per column over the window's rows, and
+     * across the columns of a row of windows, so every pixel is added and removed a constant number
+     * of times.
+     *
+     * @param a      The brightness of the first image's pixels in [0, 1], row by row.
+     * @param b      The brightness of the second image's pixels, row by row.
+     * @param width  The images' width.
+     * @param height The images' height.
+     * @return The mean SSIM, 1 for identical images.
+     */
+    private static double ssim(double[] a, double[] b, int width, int height) {
+        int window = Math.min(SSIM_WINDOW, Math.min(width, height));
+        // Sums of a, b, a^2, b^2 and ab over the window's rows, by column
+        double[][] columnSums = new double[5][width];
+        double[] sums = new double[5];
+        double total = 0;
+        long windows = 0;
+        for (int row = 0; row < height; row++) {
+            addRow(columnSums, a, b, row * width, width, 1);
+            if (row >= window) {
+                addRow(columnSums, a, b, (row - window) * width, width, -1);
+            }
+            if (row < window - 1) {
+                continue;
+            }
+            Arrays.fill(sums, 0);
+            for (int col = 0; col < width; col++) {
+                for (int k = 0; k < sums.length; k++) {
+                    sums[k] += columnSums[k][col];
+                    if (col >= window) {
+                        sums[k] -= columnSums[k][col - window];
+                    }
+                }
+                if (col >= window - 1) {
+                    total += windowSsim(sums, window * window);
+                    windows++;
+                }
+            }
+        }
+        return total / windows;
+    }
+
+    /**
+     * Adds a row of pixels to, or removes it from, the per-column sums.
+     *
+     * @param columnSums The sums of a, b, a^2, b^2 and ab, by column.
+     * @param a          The first image.
+     * @param b          The second image.
+     * @param offset     The index of the row's first pixel.
+     * @param width      The images' width.
+     * @param sign       1 to add the row, -1 to remove it.
+     */
+    private static void addRow(double[][] columnSums, double[] a, double[] b, int offset, int width,
+                               int sign) {
+        for (int col = 0; col < width; col++) {
+            double x = a[offset + col];
+            double y = b[offset + col];
+            columnSums[0][col] += sign * x;
+            columnSums[1][col] += sign * y;
+            columnSums[2][col] += sign * x * x;
+            columnSums[3][col] += sign * y * y;
+            columnSums[4][col] += sign * x * y;
+        }
+    }
+
+    /**
+     * Calculates the SSIM of a window from its sums.
+     *
+     * @param sums   The sums of a, b, a^2, b^2 and ab over the window.
+     * @param pixels The number of pixels in the window.
+     * @return The window's SSIM.
+     */
+    private static double windowSsim(double[] sums, int pixels) {
+        double meanA = sums[0] / pixels;
+        double meanB = sums[1] / pixels;
+        double varianceA = sums[2] / pixels - meanA * meanA;
+        double varianceB = sums[3] / pixels - meanB * meanB;
+        double covariance = sums[4] / pixels - meanA * meanB;
+        return (2 * meanA * meanB + SSIM_C1) * (2 * covariance + SSIM_C2) /
+                ((meanA * meanA + meanB * meanB + SSIM_C1) * (varianceA + varianceB + SSIM_C2));
+    }
+
+    /**
+     * Calculates the peak signal-to-noise ratio of two images.
+     *
+     * @param a The brightness of the first image's pixels in [0, 1].
+     * @param b The brightness of the second image's pixels.
+     * @return The PSNR in decibels, infinite for identical images.
+     */
+    private static double psnr(double[] a, double[] b) {
+        double squaredErrors = 0;
+        for (int i = 0; i < a.length; i++) {
+            squaredErrors += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        return 10 * Math.log10(a.length / squaredErrors);
+    }
+
+    /**
+     * Prints the fastest configuration whose SSIM meets a bar.
+     *
+     * @param rows    The columns of every row.
+     * @param minSsim The bar.
+     */
+    private static void reportCheapest(List<String[]> rows, double minSsim) {
+        String[] cheapest = null;
+        for (String[] row : rows) {
+            if (row.length < 10 || Double.parseDouble(row[8]) < minSsim) {
+                continue;
+            }
+            if (cheapest == null || Double.parseDouble(row[4]) < Double.parseDouble(cheapest[4])) {
+                cheapest = row;
+            }
+        }
+        if (cheapest == null) {
+            System.out.println(String.format(Locale.ROOT, NONE_MEETS_MSG, minSsim));
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT, CHEAPEST_MSG, minSsim, Integer.parseInt(cheapest[0]),
+                cheapest[1], cheapest[3], Double.parseDouble(cheapest[4])));
+    }
+}
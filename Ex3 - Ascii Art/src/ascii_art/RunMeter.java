@@ -0,0 +1,109 @@
+package ascii_art;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Measures the wall time, peak heap use and garbage collections of a run, for the harnesses.
+ * The heap is collected before each run, so its peak use is measured from the data that stays live
+ * between runs, such as the input image.
+ */
+class RunMeter {
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024;
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private long startNanos;
+    private long gcCountBefore;
+    private long gcTimeBefore;
+    private double wallMs;
+    private double peakHeapMb;
+    private long gcCount;
+    private long gcMs;
+
+    /**
+     * Starts measuring a run.
+     */
+    void start() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        gcCountBefore = getTotalGcCount();
+        gcTimeBefore = getTotalGcTime();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the run started last.
+     */
+    void stop() {
+        wallMs = (System.nanoTime() - startNanos) / NANOS_PER_MILLI;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeapMb = peakHeap / BYTES_PER_MEGABYTE;
+        gcCount = getTotalGcCount() - gcCountBefore;
+        gcMs = getTotalGcTime() - gcTimeBefore;
+    }
+
+    /**
+     * Gets the wall time of the run.
+     * @return The wall time in milliseconds.
+     */
+    double getWallMs() {
+        return wallMs;
+    }
+
+    /**
+     * Gets the peak heap use during the run.
+     * @return The sum of the heap pools' peak use, in megabytes.
+     */
+    double getPeakHeapMb() {
+        return peakHeapMb;
+    }
+
+    /**
+     * Gets the number of garbage collections during the run.
+     * @return The collection count, of all collectors.
+     */
+    long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * Gets the time spent in garbage collection during the run.
+     * @return The collection time in milliseconds, of all collectors.
+     */
+    long getGcMs() {
+        return gcMs;
+    }
+
+    /**
+     * Gets the number of garbage collections so far, of all collectors.
+     * @return The collection count.
+     */
+    private static long getTotalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Gets the time spent in garbage collection so far, of all collectors.
+     * @return The collection time in milliseconds.
+     */
+    private static long getTotalGcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+}
@@ -0,0 +1,526 @@
+package ascii_art;
+
+import ascii_output.ArchiveAsciiOutput;
+import ascii_output.AsciiOutput;
+import ascii_output.CharGrid;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.PngAsciiOutput;
+import image.Image;
+import image.ImageRenderer;
+import image_char_matching.SubImgCharMatcher;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how the ASCII art pipeline scales with the image size and the resolution.
+ * Images are generated synthetically, so no real image is needed: smooth gradients overlaid with
+ * thin lines and noise, so every stage sees realistic work. Each configuration runs the whole
+ * Image, ImageRenderer, AsciiArtAlgorithm and AsciiOutput path, and its wall time, peak heap use and
+ * garbage collections are written as a row of a CSV file.
+ * <p>
+ * Usage: ScalabilityHarness [--megapixels 1,4,16] [--resolutions 32,128,512] [--repeats 3]
+ * [--output archive|html|png|none] [--mode pipeline|kernel|edges] [--csv scalability.csv]
+ * <p>
+ * The kernel mode benchmarks the brightness calculation alone instead of the whole pipeline:
+ * the original path, which copied the image into a Color per pixel and summed the tiles' luminance
+ * in doubles, against ImageRenderer streaming packed rows through its luminance kernel. Both run
+ * on the same image, alternating, after a run of each that is not timed, and the median wall time
+ * of each is printed next to the other. The edges mode benchmarks what edge glyphs add to the
+ * whole conversion, AsciiArtAlgorithm.run with them off and on, the same way, on line art.
+ * <p>
+ * Resolutions are powers of two, as the shell's res command keeps to. Arguments are checked before
+ * anything runs, and the usage is printed instead if any is wrong.
+ * <p>
+ * Large images need a large heap, such as -Xmx4g for 100 megapixels. A configuration that runs out
+ * of memory is recorded as such, and the rest still run.
+ */
+public class ScalabilityHarness {
+    private static final String DEFAULT_MEGAPIXELS = "1,4,16";
+    private static final String DEFAULT_RESOLUTIONS = "32,128,512";
+    private static final int DEFAULT_REPEATS = 3;
+    private static final String DEFAULT_OUTPUT = "archive";
+    private static final String OUTPUTS = "archive,html,png,none";
+    private static final String DEFAULT_CSV = "scalability.csv";
+    private static final String PIPELINE_MODE = "pipeline";
+    private static final String KERNEL_MODE = "kernel";
+    private static final String EDGES_MODE = "edges";
+    private static final String MODES = PIPELINE_MODE + "," + KERNEL_MODE + "," + EDGES_MODE;
+    private static final String CSV_HEADER = "megapixels,width,height,resolution,output,repeat," +
+            "wall_ms,peak_heap_mb,gc_count,gc_ms,status";
+    private static final String COMPARISON_CSV_HEADER = "megapixels,width,height,resolution,variant,repeat," +
+            "wall_ms,peak_heap_mb,gc_count,gc_ms,status";
+    private static final String COMPARISON_MSG = "%s megapixels, resolution %d: %s %.1f ms, %s %.1f ms (%+.1f%%)";
+    private static final String USAGE = "Usage: ScalabilityHarness [--megapixels 1,4,16] " +
+            "[--resolutions 32,128,512] [--repeats 3] [--output archive|html|png|none] " +
+            "[--mode pipeline|kernel|edges] [--csv file]";
+    // Luminance factors and largest channel value of the original brightness calculation
+    private static final double RED_FACTOR = 0.2126;
+    private static final double GREEN_FACTOR = 0.7152;
+    private static final double BLUE_FACTOR = 0.0722;
+    private static final int MAX_RGB_VALUE = 255;
+    private static final double PIXELS_PER_MEGAPIXEL = 1e6;
+    private static final double ASPECT_RATIO = 4.0 / 3;
+    private static final long IMAGE_SEED = 42;
+    private static final char[] CHARSET = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    private final String output;
+    private final File outputFile;
+    private final SubImgCharMatcher imgCharMatcher; // Shared by all runs, as the shell shares its own
+
+    /**
+     * Constructs a harness writing outputs of the given kind to a temporary file.
+     *
+     * @param output The kind of output: archive, html, png or none.
+     * @throws IOException If the temporary file could not be created.
+     */
+    private ScalabilityHarness(String output) throws IOException {
+        this.output = output;
+        this.outputFile = File.createTempFile("scalability", ".out");
+        outputFile.deleteOnExit();
+        this.imgCharMatcher = new SubImgCharMatcher(CHARSET);
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args The command-line arguments, as described in the class comment.
+     */
+    public static void main(String[] args) {
+        double[] megapixels;
+        int[] resolutions;
+        int repeats = DEFAULT_REPEATS;
+        String output = DEFAULT_OUTPUT;
+        String mode = PIPELINE_MODE;
+        String csv = DEFAULT_CSV;
+        try {
+            megapixels = parseList(DEFAULT_MEGAPIXELS);
+            resolutions = parseResolutions(DEFAULT_RESOLUTIONS);
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                case "--megapixels":
+                    megapixels = parseList(args[i + 1]);
+                    break;
+                case "--resolutions":
+                    resolutions = parseResolutions(args[i + 1]);
+                    break;
+                case "--repeats":
+                    repeats = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--output":
+                    output = args[i + 1];
+                    break;
+                case "--mode":
+                    mode = args[i + 1];
+                    break;
+                case "--csv":
+                    csv = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+            for (double size : megapixels) {
+                if (!(size > 0)) {
+                    throw new IllegalArgumentException(String.valueOf(size));
+                }
+            }
+            if (repeats < 1) {
+                throw new IllegalArgumentException(String.valueOf(repeats));
+            }
+            if (!Arrays.asList(OUTPUTS.split(",")).contains(output)) {
+                throw new IllegalArgumentException(output);
+            }
+            if (!Arrays.asList(MODES.split(",")).contains(mode)) {
+                throw new IllegalArgumentException(mode);
+            }
+        } catch (RuntimeException e) {
+            System.out.println(USAGE);
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(csv)) {
+            ScalabilityHarness harness = new ScalabilityHarness(output);
+            if (mode.equals(PIPELINE_MODE)) {
+                writer.println(CSV_HEADER);
+                harness.runAll(megapixels, resolutions, repeats, writer);
+            } else {
+                writer.println(COMPARISON_CSV_HEADER);
+                harness.compareAll(mode, megapixels, resolutions, repeats, writer);
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs every configuration, writing a CSV row for each run and echoing it to the console.
+     *
+     * @param megapixels  The image sizes, in megapixels.
+     * @param resolutions The resolutions.
+     * @param repeats     The number of runs of each configuration.
+     * @param writer      The CSV writer.
+     */
+    private void runAll(double[] megapixels, int[] resolutions, int repeats, PrintWriter writer) {
+        for (double size : megapixels) {
+            int width = (int) Math.round(Math.sqrt(size * PIXELS_PER_MEGAPIXEL * ASPECT_RATIO));
+            int height = (int) Math.round(size * PIXELS_PER_MEGAPIXEL / width);
+            Image image;
+            try {
+                image = generateImage(width, height);
+            } catch (OutOfMemoryError e) {
+                String row = String.format(Locale.ROOT, "%s,%d,%d,,%s,,,,,,out of memory", size, width, height,
+                        output);
+                writer.println(row);
+                System.out.println(row);
+                continue;
+            }
+            for (int resolution : resolutions) {
+                // The shell never goes past one character per pixel
+                if (resolution > width) {
+                    continue;
+                }
+                for (int repeat = 0; repeat < repeats; repeat++) {
+                    String row = String.format(Locale.ROOT, "%s,%d,%d,%d,%s,%d,%s", size, width, height,
+                            resolution, output, repeat, runOnce(image, resolution, size + "-" + resolution + "-" + repeat));
+                    writer.println(row);
+                    writer.flush();
+                    System.out.println(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the two variants a mode compares on every configuration, writing a CSV row for each run
+     * and printing the median wall time of each variant.
+     *
+     * @param mode        The mode, naming what is compared.
+     * @param megapixels  The image sizes, in megapixels.
+     * @param resolutions The resolutions.
+     * @param repeats     The number of timed runs of each variant.
+     * @param writer      The CSV writer.
+     */
+    private void compareAll(String mode, double[] megapixels, int[] resolutions, int repeats,
+                            PrintWriter writer) {
+        String[] variants = getVariants(mode);
+        for (double size : megapixels) {
+            int width = (int) Math.round(Math.sqrt(size * PIXELS_PER_MEGAPIXEL * ASPECT_RATIO));
+            int height = (int) Math.round(size * PIXELS_PER_MEGAPIXEL / width);
+            Image image;
+            try {
+                image = mode.equals(EDGES_MODE) ? generateLineArt(width, height) : generateImage(width, height);
+            } catch (OutOfMemoryError e) {
+                String row = String.format(Locale.ROOT, "%s,%d,%d,,,,,,,,out of memory", size, width, height);
+                writer.println(row);
+                System.out.println(row);
+                continue;
+            }
+            for (int resolution : resolutions) {
+                // The shell never goes past one character per pixel
+                if (resolution > width) {
+                    continue;
+                }
+                double[][] wallMs = new double[variants.length][repeats];
+                for (int repeat = -1; repeat < repeats; repeat++) {
+                    for (int variant = 0; variant < variants.length; variant++) {
+                        RunMeter meter = new RunMeter();
+                        String status = runVariant(mode, variant, image, resolution,
+                                size + "-" + resolution + "-" + repeat + "-" + variant, meter);
+                        // The first run of each variant only warms it up
+                        if (repeat < 0) {
+                            continue;
+                        }
+                        wallMs[variant][repeat] = status.equals("ok") ? meter.getWallMs() : Double.NaN;
+                        String row = String.format(Locale.ROOT, "%s,%d,%d,%d,%s,%d,%.1f,%.1f,%d,%d,%s", size,
+                                width, height, resolution, variants[variant], repeat, meter.getWallMs(),
+                                meter.getPeakHeapMb(), meter.getGcCount(), meter.getGcMs(), status);
+                        writer.println(row);
+                        writer.flush();
+                    }
+                }
+                double before = median(wallMs[0]);
+                double after = median(wallMs[1]);
+                System.out.println(String.format(Locale.ROOT, COMPARISON_MSG, size, resolution, variants[0],
+                        before, variants[1], after, 100 * (after - before) / before));
+            }
+        }
+    }
+
+    /**
+     * Gets the names of the two variants a mode compares, the baseline first.
+     *
+     * @param mode The mode.
+     * @return The variant names.
+     */
+    private static String[] getVariants(String mode) {
+        switch (mode) {
+        case KERNEL_MODE:
+            return new String[]{"color", "kernel"};
+        case EDGES_MODE:
+            return new String[]{"edges-off", "edges-on"};
+        default:
+            throw new IllegalArgumentException(mode);
+        }
+    }
+
+    /**
+     * Runs a variant of a mode once and measures it.
+     *
+     * @param mode       The mode.
+     * @param variant    The index of the variant in getVariants.
+     * @param image      The image.
+     * @param resolution The resolution.
+     * @param runName    A name unique to the run, so no result of an earlier run is reused.
+     * @param meter      The meter to measure the run with.
+     * @return "ok", or why the run failed.
+     */
+    private String runVariant(String mode, int variant, Image image, int resolution, String runName,
+                              RunMeter meter) {
+        meter.start();
+        String status = "ok";
+        try {
+            if (mode.equals(EDGES_MODE)) {
+                AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, resolution, imgCharMatcher, runName);
+                algorithm.setEdgeGlyphs(variant == 1);
+                algorithm.run();
+            } else if (variant == 0) {
+                calculateColorBrightness(image, resolution);
+            } else {
+                ImageRenderer imageRenderer = new ImageRenderer(image);
+                imageRenderer.resizeImage();
+                imageRenderer.calculateImageBrightness(resolution);
+            }
+        } catch (EmptyCharset e) {
+            status = e.getMessage();
+        } catch (OutOfMemoryError e) {
+            status = "out of memory";
+        }
+        meter.stop();
+        return status;
+    }
+
+    /**
+     * Calculates the brightness of each tile the way ImageRenderer originally did: the image is
+     * copied into a Color per pixel, padded with white to powers of two, split into a Color array
+     * per tile, and each tile's luminance is summed in doubles.
+     *
+     * @param image      The image.
+     * @param resolution The resolution.
+     * @return The brightness of each tile, row by row.
+     */
+    private static double[] calculateColorBrightness(Image image, int resolution) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Color[][] pixelArray = new Color[height][width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                pixelArray[i][j] = image.getPixel(i, j);
+            }
+        }
+        int resizeWidth = resizeExpoTwo(width);
+        int resizeHeight = resizeExpoTwo(height);
+        int leftBoundary = (resizeWidth - width) / 2;
+        int upBoundary = (resizeHeight - height) / 2;
+        Color[][] resizedPixelArray = new Color[resizeHeight][resizeWidth];
+        for (int i = 0; i < resizeHeight; i++) {
+            for (int j = 0; j < resizeWidth; j++) {
+                if (j < leftBoundary || j >= leftBoundary + width || i < upBoundary ||
+                        i >= upBoundary + height) {
+                    resizedPixelArray[i][j] = Color.WHITE;
+                } else {
+                    resizedPixelArray[i][j] = pixelArray[i - upBoundary][j - leftBoundary];
+                }
+            }
+        }
+        int smallImgWidth = resizeWidth / resolution;
+        int smallImgHeight = resizeHeight / resolution;
+        Color[][][] smallImages = new Color[resolution * resolution][smallImgHeight][smallImgWidth];
+        for (int i = 0; i < resizeHeight; i++) {
+            for (int j = 0; j < resizeWidth; j++) {
+                smallImages[j / smallImgWidth + resolution * (i / smallImgHeight)]
+                        [i % smallImgHeight][j % smallImgWidth] = resizedPixelArray[i][j];
+            }
+        }
+        double[] brightness = new double[smallImages.length];
+        for (int tile = 0; tile < smallImages.length; tile++) {
+            for (Color[] tileRow : smallImages[tile]) {
+                for (Color pixel : tileRow) {
+                    brightness[tile] += pixel.getRed() * RED_FACTOR + pixel.getGreen() * GREEN_FACTOR +
+                            pixel.getBlue() * BLUE_FACTOR;
+                }
+            }
+            brightness[tile] /= MAX_RGB_VALUE * smallImgHeight * smallImgWidth;
+        }
+        return brightness;
+    }
+
+    /**
+     * Resizes a length to the nearest power of two, as ImageRenderer does.
+     *
+     * @param len The length to be resized.
+     * @return The resized length.
+     */
+    private static int resizeExpoTwo(int len) {
+        int resizeLength = 2;
+        while (resizeLength < len) {
+            resizeLength *= 2;
+        }
+        return resizeLength;
+    }
+
+    /**
+     * Gets the median of some values.
+     *
+     * @param values The values, NaN for a failed run.
+     * @return The median, or NaN if any run failed.
+     */
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        if (Double.isNaN(sorted[sorted.length - 1])) {
+            return Double.NaN;
+        }
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * Runs the pipeline once and measures it.
+     *
+     * @param image      The image.
+     * @param resolution The resolution.
+     * @param runName    A name unique to the run, so no result of an earlier run is reused.
+     * @return The measurement columns of the CSV row.
+     */
+    private String runOnce(Image image, int resolution, String runName) {
+        RunMeter meter = new RunMeter();
+        meter.start();
+        String status = "ok";
+        try {
+            AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, resolution, imgCharMatcher, runName);
+            CharGrid grid = algorithm.run();
+            AsciiOutput asciiOutput = createOutput();
+            if (asciiOutput != null) {
+                asciiOutput.out(grid);
+            }
+        } catch (EmptyCharset e) {
+            status = e.getMessage();
+        } catch (OutOfMemoryError e) {
+            status = "out of memory";
+        }
+        meter.stop();
+        return String.format(Locale.ROOT, "%.1f,%.1f,%d,%d,%s", meter.getWallMs(),
+                meter.getPeakHeapMb(), meter.getGcCount(), meter.getGcMs(), status);
+    }
+
+    /**
+     * Creates the output the ASCII art of a run is written with.
+     *
+     * @return The output, or null to skip writing.
+     */
+    private AsciiOutput createOutput() {
+        switch (output) {
+        case "html":
+            return new HtmlAsciiOutput(outputFile.getPath(), "Courier New");
+        case "png":
+            return new PngAsciiOutput(outputFile.getPath(), true);
+        case "none":
+            return null;
+        default:
+            return new ArchiveAsciiOutput(outputFile.getPath(), true);
+        }
+    }
+
+    /**
+     * Generates a synthetic image: a smooth two-dimensional gradient, a grid of thin dark lines
+     * and a little noise, the same for every run of the same size.
+     *
+     * @param width  The image width.
+     * @param height The image height.
+     * @return The image.
+     */
+    private static Image generateImage(int width, int height) {
+        Random random = new Random(IMAGE_SEED);
+        int[] pixels = new int[width * height];
+        int lineSpacing = Math.max(8, width / 64);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = (int) (255.0 * (x + y) / (width + height));
+                if (x % lineSpacing == 0 || (x + 2 * y) % (3 * lineSpacing) == 0) {
+                    value /= 4;
+                }
+                value = Math.max(0, Math.min(255, value + random.nextInt(16) - 8));
+                pixels[y * width + x] = (value << 16) | (value << 8) | value;
+            }
+        }
+        return new Image(pixels, width, height);
+    }
+
+    /**
+     * Generates a synthetic line drawing: thin dark strokes on white, horizontal, vertical and in both
+     * diagonals, some of them the lower edge of a filled band, the same for every run of the same size.
+     *
+     * @param width  The image width.
+     * @param height The image height.
+     * @return The image.
+     */
+    private static Image generateLineArt(int width, int height) {
+        Random random = new Random(IMAGE_SEED);
+        int[] pixels = new int[width * height];
+        int spacing = Math.max(16, width / 48);
+        int stroke = Math.max(1, spacing / 16);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 255;
+                if (x % spacing < stroke || y % (2 * spacing) < stroke ||
+                        (x + y) % (3 * spacing) < stroke || (x - y + height) % (3 * spacing) < stroke) {
+                    value = 0;
+                } else if (y % (2 * spacing) >= 3 * spacing / 2) {
+                    value = 160;
+                }
+                value = Math.max(0, Math.min(255, value + random.nextInt(8) - 4));
+                pixels[y * width + x] = (value << 16) | (value << 8) | value;
+            }
+        }
+        return new Image(pixels, width, height);
+    }
+
+    /**
+     * Parses a comma separated list of resolutions.
+     *
+     * @param list The list.
+     * @return The resolutions.
+     * @throws IllegalArgumentException If a resolution is not a number or not a power of two.
+     */
+    static int[] parseResolutions(String list) {
+        String[] items = list.split(",");
+        int[] resolutions = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            resolutions[i] = Integer.parseInt(items[i].trim());
+            if (resolutions[i] < 1 || Integer.bitCount(resolutions[i]) != 1) {
+                throw new IllegalArgumentException(items[i]);
+            }
+        }
+        return resolutions;
+    }
+
+    /**
+     * Parses a comma separated list of numbers.
+     *
+     * @param list The list.
+     * @return The numbers.
+     */
+    private static double[] parseList(String list) {
+        String[] items = list.split(",");
+        double[] values = new double[items.length];
+        for (int i = 0; i < items.length; i++) {
+            values[i] = Double.parseDouble(items[i].trim());
+        }
+        return values;
+    }
+}
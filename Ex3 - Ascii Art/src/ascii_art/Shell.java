@@ -1,15 +1,37 @@
 package ascii_art;
 
+import ascii_output.ArchiveAsciiOutput;
+import ascii_output.AsyncOutputSink;
+import ascii_output.CharGrid;
+import ascii_output.ChunkedHtmlAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.PngAsciiOutput;
 import image.Image;
+import image_char_matching.CharMatcherSnapshot;
+import image_char_matching.SubCellEncoder;
 import image_char_matching.SubImgCharMatcher;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * The Shell class provides a command-line interface for generating ASCII art from images.
  * It allows users to interactively modify the settings and produce ASCII representations of images.
+ * The same commands can be run from a script instead, with "Shell --script [file]", reading the
+ * standard input when no file is given.
  */
 public class Shell {
     private static final String DEFAULT_IMAGE_PATH_DOESNT_EXIST = "Default Image Path Doesn't Exist!";
@@ -25,8 +47,28 @@ public class Shell {
     private static final String FONT_NAME = "Courier New";
     // ASCII value for space character
     private static final int SPACE_ASCII_VALUE = 32;
+    // ASCII value for the last printable character
+    private static final int TILDE_ASCII_VALUE = 126;
     // Output HTML file name
     private static final String OUT_HTML = "out.html";
+    // Number of rows in each file of the chunked HTML output
+    private static final int HTML_ROWS_PER_CHUNK = 64;
+    // Output PNG file name
+    private static final String OUT_PNG = "out.png";
+    // Number of output files that may wait to be written at once
+    private static final int OUTPUT_QUEUE_CAPACITY = 4;
+    // Output archive file name
+    private static final String OUT_ARCHIVE = "out.aar";
+    // Number of images decoded at once, and of prefetched images kept until used
+    private static final int IMAGE_DECODER_THREADS = 2;
+    private static final int PREFETCH_CAPACITY = 4;
+    // Command-line flag for running a script of commands, lines of it starting a comment, and usage
+    private static final String SCRIPT_FLAG = "--script";
+    private static final String SCRIPT_COMMENT = "#";
+    private static final String USAGE = "Usage: Shell [--script [file]]";
+    // Directory charset profiles are saved to, and the names they may have
+    private static final String PROFILES_DIR = "charsets";
+    private static final String PROFILE_NAME_PATTERN = "[A-Za-z0-9_-]+";
     private static final String BOUNDARIES_EXCEED_ERROR_MSG = "Did not change resolution" +
             " due to exceeding boundaries.";
     private static final String WRONG_RES_FORMAT_MSG = "Did not change resolution due to incorrect format.";
@@ -37,15 +79,44 @@ public class Shell {
     private static final String INCORRECT_COMMAND_ERR = "Did not execute due to incorrect command.";
     private static final String REMOVE_FORMAT_ERR = "Did not remove due to incorrect format.";
     private static final String ADD_FORMAT_ERR = "Did not add due to incorrect format.";
+    private static final String DITHER_FORMAT_ERR = "Did not change dithering due to incorrect format.";
+    private static final String EDGES_FORMAT_ERR = "Did not change edge mode due to incorrect format.";
+    private static final String DENSITY_FORMAT_ERR = "Did not change density due to incorrect format.";
+    private static final String MATCH_FORMAT_ERR = "Did not change matching mode due to incorrect format.";
+    private static final String CROP_FORMAT_ERR = "Did not crop due to incorrect format.";
+    private static final String CROP_BOUNDARIES_ERR = "Did not crop due to exceeding boundaries.";
+    private static final String PYRAMID_FORMAT_ERR = "Did not export pyramid due to incorrect format.";
+    private static final String PYRAMID_BOUNDARIES_ERR = "Did not export pyramid due to exceeding boundaries.";
+    private static final String SCRIPT_FILE_ERR = "Did not run script due to problem with script file.";
+    private static final String PREFETCH_FORMAT_ERR = "Did not prefetch due to incorrect format.";
+    private static final String ZOOM_FORMAT_ERR = "Did not change zoom due to incorrect format.";
+    private static final String SAVE_FORMAT_ERR = "Did not save charset due to incorrect format.";
+    private static final String LOAD_FORMAT_ERR = "Did not load charset due to incorrect format.";
+    private static final String PROFILE_NOT_FOUND_ERR = "Did not load charset. No such profile.";
+    private static final String PROFILE_FILE_ERR = "Did not execute due to problem with charset profile file.";
 
     // Instance variables
     private final SubImgCharMatcher imgCharMatcher;
+    private final CharsetProfiles charsetProfiles;
+    private final AsyncOutputSink outputSink;
+    private final ImageLoader imageLoader;
     private Image image;
+    private Future<Image> pendingImage; // Decode of the image asked for last, until it is used
+    private String pendingImgPath;
     private String outPutStream;
     private int resolution;
     private boolean didPhotoChange;
-    private char[][] asciiArtOutput;
+    private CharGrid asciiArtOutput;
     private String imgPath;
+    private boolean dithering;
+    private boolean edgeGlyphs;
+    private boolean shapeMatching;
+    private SubCellEncoder subCellEncoder; // null to match chars from the charset
+    private int cropX;
+    private int cropY;
+    private int cropWidth; // 0 when not cropping
+    private int cropHeight;
+    private int zoomColumns;
 
     /**
      * Constructs a Shell instance with default settings.
@@ -53,9 +124,13 @@ public class Shell {
     Shell() {
         // Set default values
         resolution = DEFAULT_RESOLUTION;
+        zoomColumns = DEFAULT_RESOLUTION;
         outPutStream = DEFAULT_OUTPUT_STREAM;
         // Initialize SubImgCharMatcher
         imgCharMatcher = new SubImgCharMatcher(charset);
+        charsetProfiles = new CharsetProfiles(PROFILES_DIR);
+        outputSink = new AsyncOutputSink(OUTPUT_QUEUE_CAPACITY);
+        imageLoader = new ImageLoader(IMAGE_DECODER_THREADS, PREFETCH_CAPACITY);
         try {
             // Load default image
             image = new Image(DEFAULT_IMG_PATH);
@@ -79,9 +154,11 @@ public class Shell {
      * @throws IOException               If there is an I/O error while executing the command.
      * @throws ResolutionExceedsBoundary If the resolution exceeds predefined limits.
      * @throws EmptyCharset              If the character set for ASCII art generation is empty.
+     * @throws CharsetProfileException   If a charset profile cannot be saved or loaded.
+     * @throws InterruptedException      If interrupted while waiting for output files to be written.
      */
     private void chooseCommand(String[] input) throws WrongFormatException, IOException,
-            ResolutionExceedsBoundary, EmptyCharset {
+            ResolutionExceedsBoundary, EmptyCharset, CharsetProfileException, InterruptedException {
         switch (input[0]) {
         case "chars":
             // Prints the current character set used for ASCII art.
@@ -97,6 +174,29 @@ public class Shell {
             removeChar(input);
             didPhotoChange = true;
             break;
+        case "crop":
+            // Renders only a region of the image, from its exact pixel corner, or the whole image again.
+            changeCrop(input);
+            didPhotoChange = true;
+            break;
+        case "zoom":
+            // Changes the number of characters in a row of a cropped region.
+            changeZoom(input);
+            didPhotoChange = true;
+            break;
+        case "save":
+            // Saves the current character set as a named profile.
+            saveProfile(input);
+            break;
+        case "load":
+            // Replaces the character set with a saved profile.
+            loadProfile(input);
+            didPhotoChange = true;
+            break;
+        case "profiles":
+            // Prints the names of the saved character set profiles.
+            System.out.println(String.join(" ", charsetProfiles.getNames()));
+            break;
         case "res":
             // Changes the resolution of the ASCII art.
             changeRes(input);
@@ -106,14 +206,46 @@ public class Shell {
             // Changes the input image for ASCII art generation.
             changeImageAscii(input);
             break;
+        case "prefetch":
+            // Starts decoding images that are likely to be asked for next.
+            prefetchImages(input);
+            break;
         case "output":
             // Changes the output format of ASCII art.
             changeOutput(input);
             break;
+        case "dither":
+            // Turns error diffusion between neighbouring tiles on or off.
+            changeDithering(input);
+            didPhotoChange = true;
+            break;
+        case "edges":
+            // Turns drawing strong edges with line characters on or off.
+            changeEdgeGlyphs(input);
+            didPhotoChange = true;
+            break;
+        case "match":
+            // Changes whether tiles are matched by brightness or by glyph shape.
+            changeMatching(input);
+            didPhotoChange = true;
+            break;
+        case "density":
+            // Changes whether each character encodes several sub-cells of the image.
+            changeDensity(input);
+            didPhotoChange = true;
+            break;
         case "asciiArt":
             // Generates and displays ASCII art.
             asciiArt();
             break;
+        case "pyramid":
+            // Outputs the ASCII art of the whole image at several resolutions at once.
+            exportPyramid(input);
+            break;
+        case "flush":
+            // Waits until all output files were written.
+            outputSink.flush();
+            break;
         default:
             // Throws an exception for incorrect command format.
             throw new WrongFormatException(INCORRECT_COMMAND_ERR);
@@ -121,18 +253,67 @@ public class Shell {
     }
 
     /**
-     * Changes the input image for generating ASCII art.
+     * Changes the input image for generating ASCII art. The image is decoded in the background,
+     * and the commands that use it wait for the decode. The decode of an image asked for before,
+     * and not used yet, is cancelled.
      *
      * @param s An array containing the command and the new image path.
-     * @throws IOException          If there is a problem with the image file.
+     * @throws IOException          If there is no such image file.
      * @throws WrongFormatException If the command format is incorrect.
      */
     private void changeImageAscii(String[] s) throws IOException, WrongFormatException {
         if (s.length == 1) {
             throw new WrongFormatException(PROBLEM_WITH_IMAGE_FILE);
         }
-        image = new Image(s[1]);
-        imgPath = s[1];
+        if (!new File(s[1]).isFile()) {
+            throw new IOException(s[1]);
+        }
+        if (pendingImage != null) {
+            pendingImage.cancel(true);
+        }
+        pendingImage = imageLoader.load(s[1]);
+        pendingImgPath = s[1];
+    }
+
+    /**
+     * Starts decoding images in the background, so changing to one of them later does not wait.
+     *
+     * @param s An array containing the command and the image paths, separated by spaces.
+     * @throws IOException          If there is no such image file, in which case none is prefetched.
+     * @throws WrongFormatException If the command format is incorrect.
+     */
+    private void prefetchImages(String[] s) throws IOException, WrongFormatException {
+        if (s.length == 1 || s[1].trim().isEmpty()) {
+            throw new WrongFormatException(PREFETCH_FORMAT_ERR);
+        }
+        String[] paths = s[1].trim().split(" +");
+        for (String path : paths) {
+            if (!new File(path).isFile()) {
+                throw new IOException(path);
+            }
+        }
+        for (String path : paths) {
+            imageLoader.prefetch(path);
+        }
+    }
+
+    /**
+     * Waits for the image asked for last to be decoded, and makes it the input image, rendering the
+     * whole of it. If it could not be decoded, the previous image is kept, with its region if any.
+     *
+     * @throws IOException          If the image could not be decoded.
+     * @throws InterruptedException If interrupted while waiting for the decode.
+     */
+    private void awaitImage() throws IOException, InterruptedException {
+        if (pendingImage == null) {
+            return;
+        }
+        Future<Image> decoding = pendingImage;
+        pendingImage = null;
+        image = ImageLoader.await(decoding);
+        imgPath = pendingImgPath;
+        // A region of the previous image may not fit the new one
+        cropWidth = 0;
         didPhotoChange = true;
     }
 
@@ -141,12 +322,24 @@ public class Shell {
      * If there has been a change in photo or settings, generates new ASCII art.
      * Otherwise, displays the previously generated ASCII art.
      *
-     * @throws EmptyCharset If the character set for ASCII art generation is empty.
+     * @throws EmptyCharset        If the character set for ASCII art generation is empty.
+     * @throws IOException          If the image asked for last could not be decoded.
+     * @throws InterruptedException If interrupted while waiting for the image or the output queue.
      */
-    private void asciiArt() throws EmptyCharset {
+    private void asciiArt() throws EmptyCharset, IOException, InterruptedException {
+        awaitImage();
         if (didPhotoChange) {
             // Generates new ASCII art based on the current settings.
-            asciiArtOutput = new AsciiArtAlgorithm(image, resolution, imgCharMatcher, imgPath).run();
+            AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(image, resolution, imgCharMatcher,
+                    imgPath);
+            asciiArtAlgorithm.setDithering(dithering);
+            asciiArtAlgorithm.setEdgeGlyphs(edgeGlyphs);
+            asciiArtAlgorithm.setShapeMatching(shapeMatching);
+            asciiArtAlgorithm.setSubCellEncoder(subCellEncoder);
+            if (cropWidth > 0) {
+                asciiArtAlgorithm.setViewport(cropX, cropY, cropWidth, cropHeight, zoomColumns);
+            }
+            asciiArtOutput = asciiArtAlgorithm.run();
             createOutput();
             // Reset photo change flag
             didPhotoChange = false;
@@ -156,103 +349,425 @@ public class Shell {
         }
     }
 
+    /**
+     * Generates the ASCII art of the whole image at several resolutions, reading the image once,
+     * and outputs each of them. Output files are named after the resolution, such as out_64.html.
+     * The resolution and the ASCII art shown by asciiArt are left as they are.
+     *
+     * @param s An array containing the command and the resolutions, each a power of two.
+     * @throws WrongFormatException If the command format is incorrect or a resolution exceeds the
+     *                              boundaries res would keep to.
+     * @throws EmptyCharset         If the character set for ASCII art generation is empty.
+     * @throws IOException          If the image asked for last could not be decoded.
+     * @throws InterruptedException If interrupted while waiting for the image or the output queue.
+     */
+    private void exportPyramid(String[] s) throws WrongFormatException, EmptyCharset, IOException,
+            InterruptedException {
+        if (s.length == 1) {
+            throw new WrongFormatException(PYRAMID_FORMAT_ERR);
+        }
+        int[] resolutions;
+        try {
+            resolutions = Arrays.stream(s[1].trim().split(" +")).mapToInt(Integer::parseInt)
+                    .distinct().sorted().toArray();
+        } catch (NumberFormatException e) {
+            throw new WrongFormatException(PYRAMID_FORMAT_ERR);
+        }
+        awaitImage();
+        double minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
+        for (int pyramidRes : resolutions) {
+            if (pyramidRes <= 0 || Integer.bitCount(pyramidRes) != 1) {
+                throw new WrongFormatException(PYRAMID_FORMAT_ERR);
+            }
+            if (pyramidRes > image.getWidth() || pyramidRes < minCharsInRow) {
+                throw new WrongFormatException(PYRAMID_BOUNDARIES_ERR);
+            }
+        }
+        AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(image, resolution, imgCharMatcher, imgPath);
+        asciiArtAlgorithm.setDithering(dithering);
+        CharGrid[] grids = asciiArtAlgorithm.runPyramid(resolutions);
+        for (int i = 0; i < grids.length; i++) {
+            createOutput(grids[i], "_" + resolutions[i]);
+        }
+    }
+
     /**
      * Runs the interactive shell for generating ASCII art.
      * Reads user input and executes corresponding commands until "exit" is entered.
+     * Output files are written in the background, and whether they were written is reported
+     * before the next prompt.
      */
     public void run() {
         while (true) {
+            printOutputReports();
             System.out.print(">>> ");
             // Read user input
             String[] input = KeyboardInput.readLine().split(" ", 2);
-            // Execute commands based on user input
             if (input[0].equals("exit")) {
+                finish();
                 return;
             }
-            try {
-                chooseCommand(input);
-            } catch (IOException e) {
-                System.out.println(PROBLEM_WITH_IMAGE_FILE);
-            } catch (Exception e) {
-                System.out.println(e.getMessage());
+            // Execute commands based on user input
+            if (!execute(input)) {
+                return;
             }
         }
     }
 
+    /**
+     * Runs a script of commands without prompting, until its end or an "exit" line. Blank lines
+     * and lines starting with '#' are skipped.
+     * Work whose result nobody would see is skipped: a run of consecutive add and remove commands
+     * is applied to the charset as one change, and an asciiArt command is skipped when a later one
+     * renders to the same output (the console, or the same file), so only the last render of each
+     * output is computed. A render is only skipped when the later one cannot fail where it would
+     * not, so the script prints what the interactive shell would for the same commands.
+     *
+     * @param lines The lines of the script.
+     */
+    void runScript(List<String> lines) {
+        List<String[]> commands = new ArrayList<String[]>();
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith(SCRIPT_COMMENT)) {
+                commands.add(trimmed.split(" ", 2));
+            }
+        }
+        int next = 0;
+        while (next < commands.size() && !commands.get(next)[0].equals("exit")) {
+            printOutputReports();
+            String command = commands.get(next)[0];
+            if (command.equals("add") || command.equals("remove")) {
+                next = applyCharsetChanges(commands, next);
+                continue;
+            }
+            if (!(command.equals("asciiArt") && isRenderSuperseded(commands, next)) &&
+                    !execute(commands.get(next))) {
+                return;
+            }
+            next++;
+        }
+        finish();
+    }
 
     /**
-     * Adds character(s) to the charset.
+     * Executes a command, printing why if it failed.
      *
-     * @param s The string representing the character(s) to add.
-     * @throws IOException If an I/O error occurs.
+     * @param input An array containing the command and its parameters.
+     * @return false if interrupted, in which case the shell should stop.
      */
-    private void addChar(String[] s) throws WrongFormatException {
-        if (s.length == 1) {
-            throw new WrongFormatException(ADD_FORMAT_ERR);
+    private boolean execute(String[] input) {
+        try {
+            chooseCommand(input);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            System.out.println(PROBLEM_WITH_IMAGE_FILE);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
         }
-        if (s[1].length() == 1) {
-            imgCharMatcher.addChar(s[1].charAt(0));
-            return;
+        return true;
+    }
+
+    /**
+     * Waits for the output files still waiting to be written, prints whether they were, and stops
+     * the output writer.
+     */
+    private void finish() {
+        try {
+            outputSink.flush();
+            printOutputReports();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException e) {
+            // The writer stopped, so the outputs it finished are all there is to report
+            printOutputReports();
+            System.out.println(e.getMessage());
+        } finally {
+            outputSink.close();
         }
-        if (s[1].equals("all")) {
-            for (int i = 32; i < 127; i++) {
-                imgCharMatcher.addChar((char) i);
+    }
+
+    /**
+     * Applies a run of consecutive add and remove commands of a script to the charset as a single
+     * change: each character ends up as the last command touching it left it, and the charset
+     * publishes one snapshot, rendering no glyph of a character added and then removed again.
+     *
+     * @param commands The commands of the script.
+     * @param first    The index of the run's first command.
+     * @return The index of the first command after the run.
+     */
+    private int applyCharsetChanges(List<String[]> commands, int first) {
+        // Whether each character touched is in the charset after the commands so far
+        TreeMap<Character, Boolean> membership = new TreeMap<Character, Boolean>();
+        int next = first;
+        for (; next < commands.size(); next++) {
+            String[] input = commands.get(next);
+            boolean add = input[0].equals("add");
+            if (!add && !input[0].equals("remove")) {
+                break;
+            }
+            try {
+                for (char c : parseChars(input, add ? ADD_FORMAT_ERR : REMOVE_FORMAT_ERR)) {
+                    membership.put(c, add);
+                }
+            } catch (WrongFormatException e) {
+                System.out.println(e.getMessage());
             }
-            return;
         }
-        if (s[1].equals("space")) {
-            imgCharMatcher.addChar((char) SPACE_ASCII_VALUE);
-            return;
+        StringBuilder added = new StringBuilder();
+        StringBuilder removed = new StringBuilder();
+        for (Map.Entry<Character, Boolean> entry : membership.entrySet()) {
+            (entry.getValue() ? added : removed).append(entry.getKey().charValue());
         }
-        if (s[1].length() == 3 && s[1].charAt(1) == '-') {
-            AddFromCharTo(s[1]);
-            return;
+        imgCharMatcher.changeChars(added.toString().toCharArray(), removed.toString().toCharArray());
+        didPhotoChange = true;
+        return next;
+    }
+
+    /**
+     * Checks whether a later asciiArt command of a script renders to the same output as one,
+     * following the output commands between them, and is sure to render it.
+     * The current render must be able to run, with a charset and a decoded image, and no command
+     * before the later one may change the charset or the image: only those could make the later
+     * render fail, leaving nothing on the output the skipped render would have written to.
+     *
+     * @param commands The commands of the script.
+     * @param index    The index of the asciiArt command.
+     * @return true if a later asciiArt command surely renders to the same output.
+     */
+    private boolean isRenderSuperseded(List<String[]> commands, int index) {
+        if (image == null || pendingImage != null || imgCharMatcher.getCharsetSize() == 0) {
+            return false;
+        }
+        String target = getOutputTarget(outPutStream);
+        String laterOutput = outPutStream;
+        for (int later = index + 1; later < commands.size(); later++) {
+            String[] input = commands.get(later);
+            if (input[0].equals("exit") || isRenderInputChange(input[0])) {
+                return false;
+            }
+            if (input[0].equals("output") && input.length > 1 && getOutputTarget(input[1]) != null) {
+                laterOutput = input[1];
+            }
+            if (input[0].equals("asciiArt") && target.equals(getOutputTarget(laterOutput))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a command changes what a render reads, the charset or the image, so a render
+     * after it may fail where one before it would not.
+     *
+     * @param command The command name.
+     * @return true if the command may change the charset or the image.
+     */
+    private static boolean isRenderInputChange(String command) {
+        switch (command) {
+        case "add":
+        case "remove":
+        case "load":
+        case "image":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Gets where an output method renders to.
+     *
+     * @param outputStream The output method.
+     * @return "console", the output file name, or null if there is no such output method.
+     */
+    private static String getOutputTarget(String outputStream) {
+        switch (outputStream) {
+        case "console":
+            return "console";
+        case "html":
+        case "chunked":
+            return OUT_HTML;
+        case "png":
+            return OUT_PNG;
+        case "archive":
+            return OUT_ARCHIVE;
+        default:
+            return null;
         }
-        throw new WrongFormatException(ADD_FORMAT_ERR);
+    }
+
+
+    /**
+     * Adds character(s) to the charset.
+     *
+     * @param s The string representing the character(s) to add.
+     * @throws WrongFormatException If the command format is incorrect.
+     */
+    private void addChar(String[] s) throws WrongFormatException {
+        imgCharMatcher.addChars(parseChars(s, ADD_FORMAT_ERR));
     }
 
     /**
      * Removes character(s) from the charset.
      *
      * @param s The string representing the character(s) to remove.
-     * @throws IOException If an I/O error occurs.
+     * @throws WrongFormatException If the command format is incorrect.
      */
     private void removeChar(String[] s) throws WrongFormatException {
+        imgCharMatcher.removeChars(parseChars(s, REMOVE_FORMAT_ERR));
+    }
+
+    /**
+     * Parses the character(s) an add or remove command applies to: a single character, 'all',
+     * 'space', or a range such as 'a-z'.
+     *
+     * @param s           An array containing the command and the character(s).
+     * @param formatError The message of the exception thrown if the format is incorrect.
+     * @return The characters.
+     * @throws WrongFormatException If the command format is incorrect.
+     */
+    private static char[] parseChars(String[] s, String formatError) throws WrongFormatException {
         if (s.length == 1) {
-            throw new WrongFormatException(REMOVE_FORMAT_ERR);
+            throw new WrongFormatException(formatError);
         }
         if (s[1].length() == 1) {
-            imgCharMatcher.removeChar(s[1].charAt(0));
-            return;
+            return new char[]{s[1].charAt(0)};
         }
         switch (s[1]) {
         case "all":
-            for (int i = 32; i < 127; i++) {
-                imgCharMatcher.removeChar((char) i);
-            }
-            return;
+            return charRange((char) SPACE_ASCII_VALUE, (char) TILDE_ASCII_VALUE);
         case "space":
-            imgCharMatcher.removeChar((char) SPACE_ASCII_VALUE);
-            return;
+            return new char[]{(char) SPACE_ASCII_VALUE};
         }
         if (s[1].length() == 3 && s[1].charAt(1) == '-') {
-            removeFromCharTo(s[1]);
+            char lowChar = s[1].charAt(0);
+            char highChar = s[1].charAt(2);
+            return charRange((char) Math.min(lowChar, highChar), (char) Math.max(lowChar, highChar));
+        }
+        throw new WrongFormatException(formatError);
+    }
+
+    /**
+     * Sets the region of the image to render, or goes back to rendering the whole image.
+     * The region starts at the exact pixel asked for. Its tiles are kept for a few tile grids,
+     * so panning between regions, by whole tiles or not, reuses the tiles already computed.
+     *
+     * @param s The string representing the region ('x y width height', in image pixels) or 'off'.
+     * @throws WrongFormatException If the command format is incorrect or the region exceeds the image.
+     * @throws IOException          If the image asked for last could not be decoded.
+     * @throws InterruptedException If interrupted while waiting for the image.
+     */
+    private void changeCrop(String[] s) throws WrongFormatException, IOException, InterruptedException {
+        if (s.length == 1) {
+            throw new WrongFormatException(CROP_FORMAT_ERR);
+        }
+        if (s[1].equals("off")) {
+            cropWidth = 0;
             return;
         }
-        throw new WrongFormatException(REMOVE_FORMAT_ERR);
+        String[] region = s[1].split(" ");
+        if (region.length != 4) {
+            throw new WrongFormatException(CROP_FORMAT_ERR);
+        }
+        int x, y, width, height;
+        try {
+            x = Integer.parseInt(region[0]);
+            y = Integer.parseInt(region[1]);
+            width = Integer.parseInt(region[2]);
+            height = Integer.parseInt(region[3]);
+        } catch (NumberFormatException e) {
+            throw new WrongFormatException(CROP_FORMAT_ERR);
+        }
+        awaitImage();
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 ||
+                x + width > image.getWidth() || y + height > image.getHeight()) {
+            throw new WrongFormatException(CROP_BOUNDARIES_ERR);
+        }
+        cropX = x;
+        cropY = y;
+        cropWidth = width;
+        cropHeight = height;
+    }
+
+    /**
+     * Changes the number of characters in a row of a cropped region.
+     *
+     * @param s The string representing the number of characters.
+     * @throws WrongFormatException If the command format is incorrect.
+     */
+    private void changeZoom(String[] s) throws WrongFormatException {
+        if (s.length == 1) {
+            throw new WrongFormatException(ZOOM_FORMAT_ERR);
+        }
+        try {
+            int columns = Integer.parseInt(s[1]);
+            if (columns <= 0) {
+                throw new WrongFormatException(ZOOM_FORMAT_ERR);
+            }
+            zoomColumns = columns;
+        } catch (NumberFormatException e) {
+            throw new WrongFormatException(ZOOM_FORMAT_ERR);
+        }
+    }
+
+    /**
+     * Saves the current charset as a named profile.
+     *
+     * @param s An array containing the command and the profile name.
+     * @throws WrongFormatException    If the command format is incorrect.
+     * @throws CharsetProfileException If the profile file could not be written.
+     */
+    private void saveProfile(String[] s) throws WrongFormatException, CharsetProfileException {
+        if (s.length == 1 || !s[1].matches(PROFILE_NAME_PATTERN)) {
+            throw new WrongFormatException(SAVE_FORMAT_ERR);
+        }
+        try {
+            charsetProfiles.save(s[1], imgCharMatcher.getSnapshot());
+        } catch (IOException e) {
+            throw new CharsetProfileException(PROFILE_FILE_ERR);
+        }
+    }
+
+    /**
+     * Replaces the charset with a named profile.
+     *
+     * @param s An array containing the command and the profile name.
+     * @throws WrongFormatException    If the command format is incorrect.
+     * @throws CharsetProfileException If there is no such profile or its file could not be read.
+     */
+    private void loadProfile(String[] s) throws WrongFormatException, CharsetProfileException {
+        if (s.length == 1 || !s[1].matches(PROFILE_NAME_PATTERN)) {
+            throw new WrongFormatException(LOAD_FORMAT_ERR);
+        }
+        CharMatcherSnapshot profile;
+        try {
+            profile = charsetProfiles.load(s[1]);
+        } catch (IOException e) {
+            throw new CharsetProfileException(PROFILE_FILE_ERR);
+        }
+        if (profile == null) {
+            throw new CharsetProfileException(PROFILE_NOT_FOUND_ERR);
+        }
+        imgCharMatcher.setSnapshot(profile);
     }
 
     /**
      * Changes the resolution of ASCII art.
      *
      * @param s The string representing the new resolution or direction ('up'/'down').
-     * @throws IOException               If an I/O error occurs.
+     * @throws IOException               If the image asked for last could not be decoded.
      * @throws ResolutionExceedsBoundary If the new resolution exceeds image boundary.
+     * @throws InterruptedException      If interrupted while waiting for the image.
      */
-    private void changeRes(String[] s) throws WrongFormatException, ResolutionExceedsBoundary {
+    private void changeRes(String[] s) throws WrongFormatException, ResolutionExceedsBoundary, IOException,
+            InterruptedException {
         if (s.length == 1) {
             throw new WrongFormatException(WRONG_RES_FORMAT_MSG);
         }
+        awaitImage();
         switch (s[1]) {
         case "up":
             if (image.getWidth() < resolution * 2) {
@@ -275,7 +790,7 @@ public class Shell {
     /**
      * Changes the output method for ASCII art.
      *
-     * @param s The string representing the new output method ('html'/'console').
+     * @param s The string representing the new output method ('html'/'chunked'/'console'/'png'/'archive').
      * @throws IOException If an I/O error occurs.
      */
     private void changeOutput(String[] s) throws WrongFormatException {
@@ -289,44 +804,120 @@ public class Shell {
         case "console":
             outPutStream = "console";
             return;
+        case "chunked":
+            outPutStream = "chunked";
+            return;
+        case "png":
+            outPutStream = "png";
+            return;
+        case "archive":
+            outPutStream = "archive";
+            return;
         }
         throw new WrongFormatException(OUTPUT_FORMAT_ERR_MSG);
     }
 
     /**
-     * Adds characters from a range to the charset.
+     * Turns dithering of the ASCII art on or off.
+     *
+     * @param s The string representing the new dithering state ('on'/'off').
+     * @throws WrongFormatException If the command format is incorrect.
+     */
+    private void changeDithering(String[] s) throws WrongFormatException {
+        if (s.length == 1) {
+            throw new WrongFormatException(DITHER_FORMAT_ERR);
+        }
+        switch (s[1]) {
+        case "on":
+            dithering = true;
+            return;
+        case "off":
+            dithering = false;
+            return;
+        }
+        throw new WrongFormatException(DITHER_FORMAT_ERR);
+    }
+
+    /**
+     * Turns drawing strong edges with line characters on or off.
+     *
+     * @param s The string representing the new edge mode ('on'/'off').
+     * @throws WrongFormatException If the command format is incorrect.
+     */
+    private void changeEdgeGlyphs(String[] s) throws WrongFormatException {
+        if (s.length == 1) {
+            throw new WrongFormatException(EDGES_FORMAT_ERR);
+        }
+        switch (s[1]) {
+        case "on":
+            edgeGlyphs = true;
+            return;
+        case "off":
+            edgeGlyphs = false;
+            return;
+        }
+        throw new WrongFormatException(EDGES_FORMAT_ERR);
+    }
+
+    /**
+     * Changes whether each character of the ASCII art encodes a block of sub-cells of the image:
+     * 2x4 Braille dots, 1x2 half blocks, or a single tile matched from the charset.
      *
-     * @param s The string representing the range of characters to add.
+     * @param s The string representing the density ('braille'/'halfblock'/'ascii').
+     * @throws WrongFormatException If the command format is incorrect.
      */
-    private void AddFromCharTo(String s) {
-        char lowChar = s.charAt(0);
-        char highChar = s.charAt(2);
-        if (highChar < lowChar) {
-            char temp = lowChar;
-            lowChar = highChar;
-            highChar = temp;
+    private void changeDensity(String[] s) throws WrongFormatException {
+        if (s.length == 1) {
+            throw new WrongFormatException(DENSITY_FORMAT_ERR);
         }
-        for (int i = lowChar; i <= highChar; i++) {
-            imgCharMatcher.addChar((char) i);
+        switch (s[1]) {
+        case "braille":
+            subCellEncoder = SubCellEncoder.BRAILLE;
+            return;
+        case "halfblock":
+            subCellEncoder = SubCellEncoder.HALF_BLOCK;
+            return;
+        case "ascii":
+            subCellEncoder = null;
+            return;
         }
+        throw new WrongFormatException(DENSITY_FORMAT_ERR);
     }
 
     /**
-     * Removes characters from a range from the charset.
+     * Changes how tiles are matched to characters.
      *
-     * @param s The string representing the range of characters to remove.
+     * @param s The string representing the new matching mode ('brightness'/'shape').
+     * @throws WrongFormatException If the command format is incorrect.
      */
-    private void removeFromCharTo(String s) {
-        char lowChar = s.charAt(0);
-        char highChar = s.charAt(2);
-        if (highChar < lowChar) {
-            char temp = lowChar;
-            lowChar = highChar;
-            highChar = temp;
+    private void changeMatching(String[] s) throws WrongFormatException {
+        if (s.length == 1) {
+            throw new WrongFormatException(MATCH_FORMAT_ERR);
+        }
+        switch (s[1]) {
+        case "brightness":
+            shapeMatching = false;
+            return;
+        case "shape":
+            shapeMatching = true;
+            return;
         }
-        for (int i = lowChar; i <= highChar; i++) {
-            imgCharMatcher.removeChar((char) i);
+        throw new WrongFormatException(MATCH_FORMAT_ERR);
+    }
+
+    /**
+     * Gets the characters of a range, so it is added to or removed from the charset as one change.
+     *
+     * @param lowChar  The first character of the range.
+     * @param highChar The last character of the range.
+     * @return The characters from lowChar to highChar.
+     */
+    private static char[] charRange(char lowChar, char highChar) {
+        char[] chars = new char[highChar - lowChar + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (lowChar + i);
         }
+        return chars;
     }
 
     /**
@@ -340,26 +931,92 @@ public class Shell {
     }
 
     /**
-     * Creates output based on the output stream.
+     * Creates output based on the output stream. Console output is printed right away,
+     * while output files are handed to the background writer.
+     *
+     * @throws InterruptedException If interrupted while waiting for room in the output queue.
+     */
+    private void createOutput() throws InterruptedException {
+        createOutput(asciiArtOutput, "");
+    }
+
+    /**
+     * Outputs a grid based on the output stream, to files named with a suffix.
+     *
+     * @param grid       The grid of the ASCII art.
+     * @param fileSuffix The suffix added to output file names before their extension.
+     * @throws InterruptedException If interrupted while waiting for room in the output queue.
      */
-    private void createOutput() {
+    private void createOutput(CharGrid grid, String fileSuffix) throws InterruptedException {
+        String outHtml = addFileSuffix(OUT_HTML, fileSuffix);
+        String outPng = addFileSuffix(OUT_PNG, fileSuffix);
+        String outArchive = addFileSuffix(OUT_ARCHIVE, fileSuffix);
         switch (outPutStream) {
         case "console":
-            new ConsoleAsciiOutput().out(asciiArtOutput);
+            new ConsoleAsciiOutput().out(grid);
             break;
         case "html":
-            new HtmlAsciiOutput(OUT_HTML, FONT_NAME).out(asciiArtOutput);
+            outputSink.submit(outHtml, new HtmlAsciiOutput(outHtml, FONT_NAME), grid);
+            break;
+        case "chunked":
+            outputSink.submit(outHtml, new ChunkedHtmlAsciiOutput(outHtml, FONT_NAME, HTML_ROWS_PER_CHUNK),
+                    grid);
+            break;
+        case "png":
+            outputSink.submit(outPng, new PngAsciiOutput(outPng, true), grid);
+            break;
+        case "archive":
+            outputSink.submit(outArchive, new ArchiveAsciiOutput(outArchive, true), grid);
+        }
+    }
+
+    /**
+     * Adds a suffix to a file name, before its extension.
+     *
+     * @param filename The file name.
+     * @param suffix   The suffix.
+     * @return The file name with the suffix.
+     */
+    private static String addFileSuffix(String filename, String suffix) {
+        int extension = filename.lastIndexOf('.');
+        return filename.substring(0, extension) + suffix + filename.substring(extension);
+    }
+
+    /**
+     * Prints whether the output files finished since the last call were written.
+     */
+    private void printOutputReports() {
+        for (String report : outputSink.takeReports()) {
+            System.out.println(report);
         }
     }
 
     /**
      * The main method to start the application.
      *
-     * @param args The command-line arguments.
+     * @param args The command-line arguments: none for the interactive shell, or --script and
+     *             optionally the script file.
      */
     public static void main(String[] args) {
-        // Create instance of Shell and run it
-        Shell shell = new Shell();
-        shell.run();
+        if (args.length == 0) {
+            // Create instance of Shell and run it
+            Shell shell = new Shell();
+            shell.run();
+            return;
+        }
+        if (!args[0].equals(SCRIPT_FLAG) || args.length > 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        // Run a script from a file, or from the standard input
+        List<String> lines;
+        try {
+            lines = args.length == 2 ? Files.readAllLines(Paths.get(args[1])) :
+                    new BufferedReader(new InputStreamReader(System.in)).lines().collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println(SCRIPT_FILE_ERR);
+            return;
+        }
+        new Shell().runScript(lines);
     }
 }
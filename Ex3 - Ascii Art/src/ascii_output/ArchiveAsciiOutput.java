@@ -0,0 +1,210 @@
+package ascii_output;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+/**
+ * Output a grid of chars to a compact binary archive, read back with AsciiArchiveReader.
+ * The file holds a header with the grid dimensions and its charset (the palette), then the rows,
+ * each byte aligned, with every cell packed into ceil(log2(palette size)) bits.
+ * Rows may also be deflated one by one, in which case a table of row offsets follows the header,
+ * so any row can still be read on its own.
+ * <pre>
+ * int    FORMAT_MAGIC
+ * byte   flags (FLAG_DEFLATE_ROWS)
+ * int    width, int height
+ * int    palette size, then the palette chars
+ * byte   bits per cell
+ * int[]  height + 1 row offsets from the end of the header, only with FLAG_DEFLATE_ROWS
+ * byte[] rows
+ * </pre>
+ */
+public class ArchiveAsciiOutput implements AsciiOutput {
+    /**
+     * Marks the start of an archive, "AAR" and a format version.
+     */
+    static final int FORMAT_MAGIC = 0x41415201;
+    /**
+     * Flag set when each row is deflated on its own.
+     */
+    static final int FLAG_DEFLATE_ROWS = 1;
+    private static final int BYTE_BITS = 8;
+
+    private final String filename;
+    private final boolean deflateRows;
+
+    /**
+     * Constructs an archive output.
+     *
+     * @param filename    The file to write.
+     * @param deflateRows Whether to deflate each row on its own.
+     */
+    public ArchiveAsciiOutput(String filename, boolean deflateRows) {
+        this.filename = filename;
+        this.deflateRows = deflateRows;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        out(CharGrid.of(chars));
+    }
+
+    @Override
+    public void out(CharGrid grid) {
+        try {
+            write(grid);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    @Override
+    public void write(CharGrid grid) throws IOException {
+        char[] palette = grid.getPalette();
+        if (palette == null) {
+            palette = collectPalette(grid);
+        }
+        int bitsPerCell = getBitsPerCell(palette.length);
+        byte[][] rows = new byte[grid.getHeight()][];
+        int[] indices = new int[grid.getWidth()];
+        char[] rowChars = new char[grid.getWidth()];
+        Deflater deflater = deflateRows ? new Deflater(Deflater.BEST_COMPRESSION) : null;
+        for (int y = 0; y < rows.length; y++) {
+            if (grid.getPalette() != null) {
+                for (int x = 0; x < indices.length; x++) {
+                    indices[x] = grid.getIndex(y, x);
+                }
+            } else {
+                grid.getRow(y, rowChars, 0);
+                for (int x = 0; x < indices.length; x++) {
+                    indices[x] = Arrays.binarySearch(palette, rowChars[x]);
+                }
+            }
+            rows[y] = packRow(indices, bitsPerCell);
+            if (deflater != null) {
+                rows[y] = deflateRow(deflater, rows[y]);
+            }
+        }
+        if (deflater != null) {
+            deflater.end();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filename)))) {
+            out.writeInt(FORMAT_MAGIC);
+            out.writeByte(deflateRows ? FLAG_DEFLATE_ROWS : 0);
+            out.writeInt(grid.getWidth());
+            out.writeInt(grid.getHeight());
+            out.writeInt(palette.length);
+            for (char c : palette) {
+                out.writeChar(c);
+            }
+            out.writeByte(bitsPerCell);
+            if (deflateRows) {
+                int offset = 0;
+                for (byte[] row : rows) {
+                    out.writeInt(offset);
+                    offset += row.length;
+                }
+                out.writeInt(offset);
+            }
+            for (byte[] row : rows) {
+                out.write(row);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bits a cell is packed into.
+     *
+     * @param paletteSize The number of chars in the palette.
+     * @return ceil(log2(paletteSize)), which is 0 for a single char.
+     */
+    static int getBitsPerCell(int paletteSize) {
+        return paletteSize <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    /**
+     * Gets the number of bytes a packed row takes.
+     *
+     * @param width       The number of cells in a row.
+     * @param bitsPerCell The number of bits a cell is packed into.
+     * @return The number of bytes, rounded up.
+     */
+    static int getPackedRowBytes(int width, int bitsPerCell) {
+        return (int) (((long) width * bitsPerCell + BYTE_BITS - 1) / BYTE_BITS);
+    }
+
+    /**
+     * Collects the distinct chars of a grid that has no palette.
+     *
+     * @param grid The grid.
+     * @return The distinct chars, in ascending order.
+     */
+    private static char[] collectPalette(CharGrid grid) {
+        char[] chars = new char[grid.getWidth() * grid.getHeight()];
+        for (int y = 0; y < grid.getHeight(); y++) {
+            grid.getRow(y, chars, y * grid.getWidth());
+        }
+        Arrays.sort(chars);
+        int distinct = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (i == 0 || chars[i] != chars[i - 1]) {
+                chars[distinct++] = chars[i];
+            }
+        }
+        return Arrays.copyOf(chars, distinct);
+    }
+
+    /**
+     * Packs the palette indices of a row, most significant bit first.
+     *
+     * @param indices     The palette index of each cell.
+     * @param bitsPerCell The number of bits a cell is packed into.
+     * @return The packed row.
+     */
+    private static byte[] packRow(int[] indices, int bitsPerCell) {
+        byte[] packed = new byte[getPackedRowBytes(indices.length, bitsPerCell)];
+        int pending = 0; // Bits not yet written, in the low pendingBits bits
+        int pendingBits = 0;
+        int position = 0;
+        for (int index : indices) {
+            pending = (pending << bitsPerCell) | index;
+            pendingBits += bitsPerCell;
+            while (pendingBits >= BYTE_BITS) {
+                pendingBits -= BYTE_BITS;
+                packed[position++] = (byte) (pending >>> pendingBits);
+            }
+        }
+        if (pendingBits > 0) {
+            packed[position] = (byte) (pending << (BYTE_BITS - pendingBits));
+        }
+        return packed;
+    }
+
+    /**
+     * Deflates a packed row.
+     *
+     * @param deflater The deflater to use, reset before returning.
+     * @param row      The packed row.
+     * @return The deflated row.
+     */
+    private static byte[] deflateRow(Deflater deflater, byte[] row) {
+        deflater.setInput(row);
+        deflater.finish();
+        byte[] buffer = new byte[row.length + row.length / 2 + BYTE_BITS * BYTE_BITS];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        deflater.reset();
+        return Arrays.copyOf(buffer, length);
+    }
+}
@@ -0,0 +1,239 @@
+package ascii_output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads archives written by ArchiveAsciiOutput. The file is memory mapped and only the header
+ * is parsed up front, so any row can be read without reading the rows before it, and huge
+ * archives can be paged through without loading them whole. The header is checked against the
+ * file's length before anything is allocated from it, so a corrupt or truncated file fails to open
+ * instead of running out of memory or reading past its end.
+ * A reader is not safe for use by several threads at once.
+ */
+public class AsciiArchiveReader implements Closeable {
+    private static final String WRONG_FORMAT_MSG = "Not an ASCII art archive.";
+    private static final String CORRUPT_ROW_MSG = "Corrupt row %d.";
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BYTE_BITS = 8;
+    // Bytes of the magic, the flags, the width, the height and the palette size
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + 1;
+    // Largest ratio between a deflated row and the row inflated from it
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final char[] palette;
+    private final int bitsPerCell;
+    private final int packedRowBytes;
+    private final int offsetTable; // Position of the row offset table, or -1 if rows are not deflated
+    private final int rowsStart; // Position of the first row
+    private final byte[] packedRow; // Packed bytes of the row being read
+    private final Inflater inflater;
+
+    /**
+     * Opens an archive.
+     *
+     * @param filename The archive file.
+     * @throws IOException If the file could not be mapped or is not an archive.
+     */
+    public AsciiArchiveReader(String filename) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        boolean opened = false;
+        try {
+            long length = channel.size();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (length < HEADER_BYTES || buffer.getInt() != ArchiveAsciiOutput.FORMAT_MAGIC) {
+                throw new IOException(WRONG_FORMAT_MSG);
+            }
+            boolean deflateRows = (buffer.get() & ArchiveAsciiOutput.FLAG_DEFLATE_ROWS) != 0;
+            width = buffer.getInt();
+            height = buffer.getInt();
+            int paletteSize = buffer.getInt();
+            // A palette holds distinct chars, so there are at most as many as char values
+            if (width < 0 || height < 0 || paletteSize < 0 || paletteSize > Character.MAX_VALUE + 1 ||
+                    (long) paletteSize * Character.BYTES + 1 > buffer.remaining()) {
+                throw new IOException(WRONG_FORMAT_MSG);
+            }
+            palette = readPalette(paletteSize);
+            bitsPerCell = buffer.get();
+            if (bitsPerCell != ArchiveAsciiOutput.getBitsPerCell(paletteSize)) {
+                throw new IOException(WRONG_FORMAT_MSG);
+            }
+            // Without rows, no row is ever loaded, however wide
+            long rowBytes = height == 0 ? 0 : ((long) width * bitsPerCell + BYTE_BITS - 1) / BYTE_BITS;
+            if (deflateRows) {
+                offsetTable = buffer.position();
+                long tableEnd = offsetTable + (height + 1L) * Integer.BYTES;
+                // Every row is inflated from at most all of the deflated bytes
+                if (tableEnd > length ||
+                        rowBytes > Math.min(Integer.MAX_VALUE, MAX_DEFLATE_RATIO * (length - tableEnd)) ||
+                        buffer.getInt(offsetTable) != 0 ||
+                        buffer.getInt(offsetTable + height * Integer.BYTES) != length - tableEnd) {
+                    throw new IOException(WRONG_FORMAT_MSG);
+                }
+                rowsStart = (int) tableEnd;
+            } else {
+                offsetTable = -1;
+                rowsStart = buffer.position();
+                if (rowsStart + rowBytes * height != length) {
+                    throw new IOException(WRONG_FORMAT_MSG);
+                }
+            }
+            packedRowBytes = (int) rowBytes;
+            packedRow = new byte[packedRowBytes];
+            inflater = deflateRows ? new Inflater() : null;
+            opened = true;
+        } catch (RuntimeException e) {
+            throw new IOException(WRONG_FORMAT_MSG, e);
+        } finally {
+            if (!opened) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of chars in a row.
+     * @return The archive width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return The archive height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the charset of the archive.
+     * @return A copy of the palette the cells index, in ascending order.
+     */
+    public char[] getPalette() {
+        return palette.clone();
+    }
+
+    /**
+     * Reads a row of chars into a buffer.
+     *
+     * @param row        The row.
+     * @param dest       The destination buffer.
+     * @param destOffset The index in dest to read the row's first char to.
+     * @throws IOException If the row is corrupt.
+     */
+    public void readRow(int row, char[] dest, int destOffset) throws IOException {
+        loadPackedRow(row);
+        int pending = 0; // Bits not yet unpacked, in the low pendingBits bits
+        int pendingBits = 0;
+        int position = 0;
+        int indexMask = (1 << bitsPerCell) - 1;
+        for (int col = 0; col < width; col++) {
+            while (pendingBits < bitsPerCell) {
+                pending = (pending << BYTE_BITS) | (packedRow[position++] & BYTE_MASK);
+                pendingBits += BYTE_BITS;
+            }
+            pendingBits -= bitsPerCell;
+            int index = (pending >>> pendingBits) & indexMask;
+            if (index >= palette.length) {
+                throw new IOException(String.format(CORRUPT_ROW_MSG, row));
+            }
+            dest[destOffset + col] = palette[index];
+        }
+    }
+
+    /**
+     * Reads a run of rows into a grid.
+     *
+     * @param firstRow The first row to read.
+     * @param rowCount The number of rows to read.
+     * @return A grid of the rows, paletted by the archive's charset.
+     * @throws IOException If a row is corrupt.
+     */
+    public CharGrid readRows(int firstRow, int rowCount) throws IOException {
+        CharGrid grid = new CharGrid(width, rowCount, palette);
+        char[] rowChars = new char[width];
+        for (int row = 0; row < rowCount; row++) {
+            readRow(firstRow + row, rowChars, 0);
+            for (int col = 0; col < width; col++) {
+                grid.set(row, col, rowChars[col]);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Reads the palette from the header, checking it is in ascending order like the writer keeps it.
+     *
+     * @param paletteSize The number of chars in the palette, which the buffer holds.
+     * @return The palette.
+     * @throws IOException If the chars are not in ascending order.
+     */
+    private char[] readPalette(int paletteSize) throws IOException {
+        char[] chars = new char[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            chars[i] = buffer.getChar();
+            if (i > 0 && chars[i] <= chars[i - 1]) {
+                throw new IOException(WRONG_FORMAT_MSG);
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Loads the packed bytes of a row into packedRow, inflating them if needed.
+     *
+     * @param row The row.
+     * @throws IOException If the row could not be inflated.
+     */
+    private void loadPackedRow(int row) throws IOException {
+        if (row < 0 || row >= height) {
+            throw new IndexOutOfBoundsException(row);
+        }
+        if (inflater == null) {
+            buffer.get(rowsStart + row * packedRowBytes, packedRow);
+            return;
+        }
+        int start = buffer.getInt(offsetTable + row * Integer.BYTES);
+        int end = buffer.getInt(offsetTable + (row + 1) * Integer.BYTES);
+        if (start < 0 || start > end || end > buffer.limit() - rowsStart) {
+            throw new IOException(String.format(CORRUPT_ROW_MSG, row));
+        }
+        inflater.reset();
+        inflater.setInput(buffer.slice(rowsStart + start, end - start));
+        try {
+            int length = 0;
+            while (length < packedRowBytes && !inflater.finished()) {
+                int inflated = inflater.inflate(packedRow, length, packedRowBytes - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length < packedRowBytes) {
+                throw new IOException(String.format(CORRUPT_ROW_MSG, row));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(String.format(CORRUPT_ROW_MSG, row), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            inflater.end();
+        }
+        channel.close();
+    }
+}
@@ -1,5 +1,7 @@
 package ascii_output;
 
+import java.io.IOException;
+
 /**
  * An object implementing this interface can output a 2D array of chars
  * in some fashion.
@@ -10,4 +12,21 @@ public interface AsciiOutput {
      * Output the specified 2D array of chars
      */
     void out(char[][] chars);
+
+    /**
+     * Output the specified grid of chars. Outputs that can consume the grid's rows directly
+     * should override this, rather than have it copied to a 2D array.
+     */
+    default void out(CharGrid grid) {
+        out(grid.toCharArrays());
+    }
+
+    /**
+     * Output the specified grid of chars, throwing if it could not be output. Outputs that can
+     * fail, such as the file outputs, should override this, and report the failure from out.
+     * @throws IOException If the grid could not be output.
+     */
+    default void write(CharGrid grid) throws IOException {
+        out(grid);
+    }
 }
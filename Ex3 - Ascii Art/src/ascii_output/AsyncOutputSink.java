@@ -0,0 +1,179 @@
+package ascii_output;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs outputs on a single background writer thread, so the caller does not wait on the disk.
+ * Pending outputs are keyed by their target (such as a file name): an output submitted for a target
+ * that still has one waiting replaces it, since only the latest render of a target matters.
+ * At most capacity targets wait at once; submitting for another target blocks until one is written.
+ * Each finished output leaves a report, taken by the caller whenever it suits it. Outputs are
+ * written with AsciiOutput.write, so a failure is reported by the output that failed. An output that
+ * throws an Error, such as running out of memory for a large image, is reported as failed too.
+ * Once the writer thread has stopped, submit and flush throw instead of waiting for it.
+ */
+public class AsyncOutputSink {
+    private static final String WRITER_THREAD_NAME = "ascii-output-writer";
+    private static final String WROTE_MSG = "Wrote %s.";
+    private static final String FAILED_MSG = "Failed to write %s: %s";
+    private static final String WRITER_STOPPED_MSG = "The output writer has stopped.";
+
+    private final int capacity;
+    private final LinkedHashMap<String, PendingOutput> pending; // Waiting outputs by target, oldest first
+    private final ArrayList<String> reports; // Reports not yet taken
+    private final Thread writer;
+    private boolean writing; // Whether an output is being written
+    private boolean stopped; // Whether the writer thread has stopped
+
+    /**
+     * Constructs a sink and starts its writer thread, which does not keep the program alive
+     * and is stopped by close.
+     *
+     * @param capacity The most targets that may wait at once.
+     */
+    public AsyncOutputSink(int capacity) {
+        this.capacity = capacity;
+        this.pending = new LinkedHashMap<String, PendingOutput>();
+        this.reports = new ArrayList<String>();
+        this.writer = new Thread(this::writeLoop, WRITER_THREAD_NAME);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Submits a grid to be output in the background, replacing any output still waiting for the target.
+     *
+     * @param target The target the output writes to.
+     * @param output The output.
+     * @param grid   The grid, which must not change afterwards.
+     * @throws InterruptedException  If interrupted while waiting for room in the queue.
+     * @throws IllegalStateException If the writer thread has stopped.
+     */
+    public synchronized void submit(String target, AsciiOutput output, CharGrid grid)
+            throws InterruptedException {
+        checkWriterRunning();
+        while (!pending.containsKey(target) && pending.size() >= capacity) {
+            wait();
+            checkWriterRunning();
+        }
+        // A superseded output's replacement keeps its place in line
+        pending.put(target, new PendingOutput(output, grid));
+        notifyAll();
+    }
+
+    /**
+     * Waits until every submitted output was written.
+     *
+     * @throws InterruptedException  If interrupted while waiting.
+     * @throws IllegalStateException If the writer thread stopped before writing them.
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (!pending.isEmpty() || writing) {
+            checkWriterRunning();
+            wait();
+        }
+    }
+
+    /**
+     * Takes the reports of the outputs finished since the last call.
+     *
+     * @return The reports, in the order the outputs finished.
+     */
+    public synchronized List<String> takeReports() {
+        List<String> taken = new ArrayList<String>(reports);
+        reports.clear();
+        return taken;
+    }
+
+    /**
+     * Stops the writer thread, dropping the outputs still waiting. Call flush first to write them.
+     */
+    public void close() {
+        writer.interrupt();
+    }
+
+    /**
+     * Checks that the writer thread is still running, so there is something to wait for.
+     *
+     * @throws IllegalStateException If the writer thread has stopped.
+     */
+    private void checkWriterRunning() {
+        if (stopped) {
+            throw new IllegalStateException(WRITER_STOPPED_MSG);
+        }
+    }
+
+    /**
+     * Writes the waiting outputs one by one, until closed, and wakes up whoever waits on the
+     * writer once it stops, whatever stopped it.
+     */
+    private void writeLoop() {
+        try {
+            writeOutputs();
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes the waiting outputs one by one, reporting each, until interrupted.
+     */
+    private void writeOutputs() {
+        while (true) {
+            String target;
+            PendingOutput next;
+            synchronized (this) {
+                while (pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                Iterator<Map.Entry<String, PendingOutput>> oldest = pending.entrySet().iterator();
+                Map.Entry<String, PendingOutput> entry = oldest.next();
+                oldest.remove();
+                target = entry.getKey();
+                next = entry.getValue();
+                writing = true;
+                notifyAll();
+            }
+            String report = null;
+            try {
+                next.output.write(next.grid);
+                report = String.format(WROTE_MSG, target);
+            } catch (Throwable e) {
+                // An Error leaves the writer usable once the failed output is dropped
+                report = String.format(FAILED_MSG, target, e);
+            } finally {
+                synchronized (this) {
+                    if (report != null) {
+                        reports.add(report);
+                    }
+                    writing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * An output waiting to be written, with the grid it writes.
+     */
+    private static class PendingOutput {
+        private final AsciiOutput output;
+        private final CharGrid grid;
+
+        PendingOutput(AsciiOutput output, CharGrid grid) {
+            this.output = output;
+            this.grid = grid;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package ascii_output;
+
+import java.util.Arrays;
+
+/**
+ * A grid of chars backed by a single flat array, row after row.
+ * When all the chars that may appear are known up front and there are at most MAX_BYTE_PALETTE_SIZE
+ * of them, a cell holds the one-byte index of its char in that palette instead of the char.
+ */
+public final class CharGrid {
+    /**
+     * The largest palette whose indices are stored in a byte per cell.
+     */
+    public static final int MAX_BYTE_PALETTE_SIZE = 256;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final int width;
+    private final int height;
+    private final char[] palette; // Sorted chars the cells index, or null if cells hold chars
+    private final byte[] indices; // Palette index of each cell, when there is a palette
+    private final char[] cells; // Char of each cell, when there is no palette
+
+    /**
+     * Constructs a grid whose cells may hold any char, all initially '\0'.
+     *
+     * @param width  The number of chars in a row.
+     * @param height The number of rows.
+     */
+    public CharGrid(int width, int height) {
+        this(width, height, null);
+    }
+
+    /**
+     * Constructs a grid whose cells hold chars of a palette, all initially the palette's first one.
+     *
+     * @param width   The number of chars in a row.
+     * @param height  The number of rows.
+     * @param palette The distinct chars cells may hold, in ascending order, or null for any char.
+     *                A palette larger than MAX_BYTE_PALETTE_SIZE is ignored.
+     */
+    public CharGrid(int width, int height, char[] palette) {
+        this.width = width;
+        this.height = height;
+        if (palette != null && palette.length > 0 && palette.length <= MAX_BYTE_PALETTE_SIZE) {
+            this.palette = palette.clone();
+            this.indices = new byte[width * height];
+            this.cells = null;
+        } else {
+            this.palette = null;
+            this.indices = null;
+            this.cells = new char[width * height];
+        }
+    }
+
+    /**
+     * Constructs a grid holding the chars of a 2D array.
+     *
+     * @param chars The chars, row by row, all rows of the same length.
+     * @return The grid.
+     */
+    public static CharGrid of(char[][] chars) {
+        CharGrid grid = new CharGrid(chars.length == 0 ? 0 : chars[0].length, chars.length);
+        for (int row = 0; row < grid.height; row++) {
+            System.arraycopy(chars[row], 0, grid.cells, row * grid.width, grid.width);
+        }
+        return grid;
+    }
+
+    /**
+     * Gets the number of chars in a row.
+     * @return The grid width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return The grid height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the palette the cells index.
+     * @return A copy of the palette, or null if the cells hold chars.
+     */
+    public char[] getPalette() {
+        return palette == null ? null : palette.clone();
+    }
+
+    /**
+     * Gets the palette index of a cell.
+     *
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The index in the palette of the cell's char.
+     * @throws IllegalStateException If the grid has no palette.
+     */
+    public int getIndex(int row, int col) {
+        if (indices == null) {
+            throw new IllegalStateException();
+        }
+        return indices[row * width + col] & BYTE_MASK;
+    }
+
+    /**
+     * Gets the char of a cell.
+     *
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The char.
+     */
+    public char get(int row, int col) {
+        int cell = row * width + col;
+        return cells != null ? cells[cell] : palette[indices[cell] & BYTE_MASK];
+    }
+
+    /**
+     * Sets the char of a cell.
+     *
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param c   The char, which must be in the palette if the grid has one.
+     * @throws IllegalArgumentException If c is not in the grid's palette.
+     */
+    public void set(int row, int col, char c) {
+        int cell = row * width + col;
+        if (cells != null) {
+            cells[cell] = c;
+            return;
+        }
+        int index = Arrays.binarySearch(palette, c);
+        if (index < 0) {
+            throw new IllegalArgumentException(String.valueOf(c));
+        }
+        indices[cell] = (byte) index;
+    }
+
+    /**
+     * Copies the chars of a row into a buffer.
+     *
+     * @param row        The row.
+     * @param dest       The destination buffer.
+     * @param destOffset The index in dest to copy the row's first char to.
+     */
+    public void getRow(int row, char[] dest, int destOffset) {
+        int start = row * width;
+        if (cells != null) {
+            System.arraycopy(cells, start, dest, destOffset, width);
+            return;
+        }
+        for (int col = 0; col < width; col++) {
+            dest[destOffset + col] = palette[indices[start + col] & BYTE_MASK];
+        }
+    }
+
+    /**
+     * Gets a view of a row's chars, reflecting later changes to the grid.
+     *
+     * @param row The row.
+     * @return The row view.
+     */
+    public CharSequence rowView(int row) {
+        return new RowView(row * width, width);
+    }
+
+    /**
+     * Copies the grid into a 2D array, one array per row.
+     * @return The chars, row by row.
+     */
+    public char[][] toCharArrays() {
+        char[][] chars = new char[height][width];
+        for (int row = 0; row < height; row++) {
+            getRow(row, chars[row], 0);
+        }
+        return chars;
+    }
+
+    /**
+     * A view of a run of cells within a row.
+     */
+    private final class RowView implements CharSequence {
+        private final int start; // Index of the view's first cell
+        private final int length; // Number of cells in the view
+
+        private RowView(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            int cell = start + index;
+            return cells != null ? cells[cell] : palette[indices[cell] & BYTE_MASK];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length || from > to) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new RowView(start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.io.Writer;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Output a grid of chars to an HTML page that stays responsive for very large grids.
+ * The rows are split into chunks of rowsPerChunk, each written to a script file of its own next to
+ * the page. The page holds an empty block of the right height per chunk, and only fills the blocks
+ * near the visible part of the page, loading their scripts on first use and emptying them again
+ * once they scroll far away. Chunks are loaded with script elements, so the page works when
+ * opened from the local filesystem too. The chunks directory is reused from output to output, and
+ * the chunks of an earlier output past the last one of the new output are deleted.
+ */
+public class ChunkedHtmlAsciiOutput implements AsciiOutput {
+    private static final double BASE_LINE_SPACING = 0.8;
+    private static final double BASE_FONT_SIZE = 150.0;
+    private static final String CHUNKS_DIR_SUFFIX = "_chunks";
+    private static final String CHUNK_FILE_FORMAT = "chunk_%d.js";
+    private static final Pattern CHUNK_FILE_PATTERN = Pattern.compile("chunk_(\\d{1,10})\\.js");
+    // How far outside the visible part of the page chunks are filled
+    private static final String PRELOAD_MARGIN = "200%";
+    private static final char LAST_PRINTABLE_ASCII = '~';
+
+    private final String fontName;
+    private final String filename;
+    private final int rowsPerChunk;
+
+    /**
+     * Constructs a chunked HTML output.
+     *
+     * @param filename     The page file. The chunks are written to a directory named after it.
+     * @param fontName     The font to show the chars in.
+     * @param rowsPerChunk The number of rows in a chunk.
+     */
+    public ChunkedHtmlAsciiOutput(String filename, String fontName, int rowsPerChunk) {
+        this.fontName = fontName;
+        this.filename = filename;
+        this.rowsPerChunk = rowsPerChunk;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        out(CharGrid.of(chars));
+    }
+
+    @Override
+    public void out(CharGrid grid) {
+        try {
+            write(grid);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    @Override
+    public void write(CharGrid grid) throws IOException {
+        File page = new File(filename);
+        String baseName = page.getName().replaceFirst("\\.[^.]*$", "");
+        File chunksDir = new File(page.getAbsoluteFile().getParentFile(), baseName + CHUNKS_DIR_SUFFIX);
+        int chunks = (grid.getHeight() + rowsPerChunk - 1) / rowsPerChunk;
+        if (!chunksDir.isDirectory() && !chunksDir.mkdirs()) {
+            throw new IOException(chunksDir.getPath());
+        }
+        char[] row = new char[grid.getWidth()];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            File chunkFile = new File(chunksDir, String.format(CHUNK_FILE_FORMAT, chunk));
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(chunkFile))) {
+                writer.write("asciiChunk(" + chunk + ",\"");
+                int end = Math.min(grid.getHeight(), (chunk + 1) * rowsPerChunk);
+                for (int y = chunk * rowsPerChunk; y < end; y++) {
+                    grid.getRow(y, row, 0);
+                    writeJsString(writer, row);
+                    writer.write("\\n");
+                }
+                writer.write("\");\n");
+            }
+        }
+        writePage(page, grid, chunks, baseName + CHUNKS_DIR_SUFFIX);
+        deleteStaleChunks(chunksDir, chunks);
+    }
+
+    /**
+     * Deletes the chunk files an earlier output left past the chunks of this one.
+     *
+     * @param chunksDir The chunks directory.
+     * @param chunks    The number of chunks of this output.
+     * @throws IOException If a stale chunk could not be deleted.
+     */
+    private static void deleteStaleChunks(File chunksDir, int chunks) throws IOException {
+        File[] files = chunksDir.listFiles();
+        if (files == null) {
+            throw new IOException(chunksDir.getPath());
+        }
+        for (File file : files) {
+            Matcher chunkFile = CHUNK_FILE_PATTERN.matcher(file.getName());
+            // Chunks are numbered by int, so no chunk file has a longer number
+            if (chunkFile.matches() && Long.parseLong(chunkFile.group(1)) >= chunks && !file.delete()) {
+                throw new IOException(file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Writes the page holding a block per chunk and the script filling them.
+     *
+     * @param page      The page file.
+     * @param grid      The grid.
+     * @param chunks    The number of chunks.
+     * @param chunksDir The path of the chunks directory, relative to the page.
+     * @throws IOException If the page could not be written.
+     */
+    private void writePage(File page, CharGrid grid, int chunks, String chunksDir) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(page, StandardCharsets.UTF_8))) {
+            writer.write(String.format(
+                "<!DOCTYPE html>\n"+
+                "<html>\n"+
+                "<head><meta charset=\"UTF-8\"></head>\n"+
+                "<body style=\""+
+                    "\tCOLOR:#000000;"+
+                    "\tTEXT-ALIGN:center;"+
+                    "\tFONT-SIZE:1px;\">\n"+
+                "<div style=\""+
+                    "\twhite-space:pre;"+
+                    "\tFONT-FAMILY:%s;"+
+                    "\tFONT-SIZE:%frem;"+
+                    "\tLETTER-SPACING:0.15em;"+
+                    "\tLINE-HEIGHT:%fem;\">\n",
+                    fontName, BASE_FONT_SIZE/grid.getWidth(), BASE_LINE_SPACING));
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int rows = Math.min(rowsPerChunk, grid.getHeight() - chunk * rowsPerChunk);
+                writer.write(String.format("<div class=\"chunk\" data-chunk=\"%d\" " +
+                        "style=\"height:%fem;overflow:hidden\"></div>\n", chunk, rows * BASE_LINE_SPACING));
+            }
+            writer.write(String.format(
+                "</div>\n"+
+                "<script>\n"+
+                "var chunkTexts = {};\n"+
+                "var chunkBlocks = document.querySelectorAll(\".chunk\");\n"+
+                "function asciiChunk(chunk, text) {\n"+
+                "  chunkTexts[chunk] = text;\n"+
+                "  var block = chunkBlocks[chunk];\n"+
+                "  if (block.dataset.visible) block.textContent = text;\n"+
+                "}\n"+
+                "var observer = new IntersectionObserver(function(entries) {\n"+
+                "  entries.forEach(function(entry) {\n"+
+                "    var block = entry.target;\n"+
+                "    var chunk = block.dataset.chunk;\n"+
+                "    if (!entry.isIntersecting) {\n"+
+                "      delete block.dataset.visible;\n"+
+                "      block.textContent = \"\";\n"+
+                "      return;\n"+
+                "    }\n"+
+                "    block.dataset.visible = \"true\";\n"+
+                "    if (chunk in chunkTexts) {\n"+
+                "      block.textContent = chunkTexts[chunk];\n"+
+                "    } else if (!block.dataset.loading) {\n"+
+                "      block.dataset.loading = \"true\";\n"+
+                "      var script = document.createElement(\"script\");\n"+
+                "      script.src = \"%s/chunk_\" + chunk + \".js\";\n"+
+                "      document.body.appendChild(script);\n"+
+                "    }\n"+
+                "  });\n"+
+                "}, {rootMargin: \"%s 0px\"});\n"+
+                "chunkBlocks.forEach(function(block) { observer.observe(block); });\n"+
+                "</script>\n"+
+                "</body>\n"+
+                "</html>\n", chunksDir, PRELOAD_MARGIN));
+        }
+    }
+
+    /**
+     * Writes chars as the contents of a double quoted JavaScript string.
+     *
+     * @param writer The writer.
+     * @param chars  The chars.
+     * @throws IOException If the chars could not be written.
+     */
+    private static void writeJsString(Writer writer, char[] chars) throws IOException {
+        for (char c : chars) {
+            switch (c) {
+                case '\\': writer.write("\\\\"); break;
+                case '"':  writer.write("\\\""); break;
+                default:
+                    if (c < ' ' || c > LAST_PRINTABLE_ASCII) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+    }
+}
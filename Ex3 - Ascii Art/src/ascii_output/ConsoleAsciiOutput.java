@@ -1,5 +1,7 @@
 package ascii_output;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Output a 2D array of chars to the console.
  * @author Dan Nirel
@@ -13,4 +15,23 @@ package ascii_output;
             System.out.println();
         }
     }
+
+    @Override
+    public void out(CharGrid grid) {
+        // The whole grid is printed at once in UTF-8, each char followed by a space
+        String lineSeparator = System.lineSeparator();
+        StringBuilder builder = new StringBuilder(
+                (2 * grid.getWidth() + lineSeparator.length()) * grid.getHeight());
+        char[] row = new char[grid.getWidth()];
+        for (int y = 0; y < grid.getHeight(); y++) {
+            grid.getRow(y, row, 0);
+            for (char c : row) {
+                builder.append(c).append(' ');
+            }
+            builder.append(lineSeparator);
+        }
+        byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+        System.out.write(bytes, 0, bytes.length);
+        System.out.flush();
+    }
 }
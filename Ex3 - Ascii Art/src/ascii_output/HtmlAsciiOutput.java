@@ -3,10 +3,11 @@ package ascii_output;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 
 /**
- * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Output a 2D array of chars to an HTML file viewable in a web browser, encoded in UTF-8.
  * @author Dan Nirel
  */
 public class HtmlAsciiOutput implements AsciiOutput {
@@ -23,10 +24,25 @@ public class HtmlAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+        out(CharGrid.of(chars));
+    }
+
+    @Override
+    public void out(CharGrid grid) {
+        try {
+            write(grid);
+        } catch(IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    @Override
+    public void write(CharGrid grid) throws IOException {
+        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8))) {
             writer.write(String.format(
                 "<!DOCTYPE html>\n"+
                 "<html>\n"+
+                "<head><meta charset=\"UTF-8\"></head>\n"+
                 "<body style=\""+
                     "\tCOLOR:#000000;"+
                     "\tTEXT-ALIGN:center;"+
@@ -37,18 +53,18 @@ public class HtmlAsciiOutput implements AsciiOutput {
                     "\tFONT-SIZE:%frem;"+
                     "\tLETTER-SPACING:0.15em;"+
                     "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
+                    fontName, BASE_FONT_SIZE/grid.getWidth(), BASE_LINE_SPACING));
+
+            char[] row = new char[grid.getWidth()];
+            for(int y = 0 ; y < grid.getHeight() ; y++) {
+                grid.getRow(y, row, 0);
+                for (char c : row) {
+                    switch(c) {
+                        case '<': writer.write("&lt;");  break;
+                        case '>': writer.write("&gt;");  break;
+                        case '&': writer.write("&amp;"); break;
+                        default:  writer.write(c);
                     }
-                    writer.write(htmlRep);
                 }
                 writer.newLine();
             }
@@ -56,8 +72,6 @@ public class HtmlAsciiOutput implements AsciiOutput {
                 "</p>\n"+
                 "</body>\n"+
                 "</html>\n");
-        } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
         }
     }
 }
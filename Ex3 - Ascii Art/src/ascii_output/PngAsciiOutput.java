@@ -0,0 +1,121 @@
+package ascii_output;
+
+import image_char_matching.CharConverter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Output a grid of chars to a PNG image, each char drawn as its glyph in black on white.
+ * Glyphs are rasterized once, by CharConverter in the font and resolution chars are matched in,
+ * into tiles of packed pixels, and every cell is drawn by copying its tile's rows into the image's
+ * pixel array. Rows of cells can be drawn in parallel, since they cover disjoint pixel bands.
+ */
+public class PngAsciiOutput implements AsciiOutput {
+    private static final int GLYPH_SIZE = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    private static final int BLACK_RGB = 0x000000;
+    private static final int WHITE_RGB = 0xFFFFFF;
+    // Glyph tiles rendered so far, shared by all outputs
+    private static final ConcurrentHashMap<Character, int[]> glyphTiles = new ConcurrentHashMap<>();
+
+    private final String filename;
+    private final boolean parallel;
+
+    /**
+     * Constructs a PNG output.
+     *
+     * @param filename The image file.
+     * @param parallel Whether to draw rows of cells in parallel.
+     */
+    public PngAsciiOutput(String filename, boolean parallel) {
+        this.filename = filename;
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        out(CharGrid.of(chars));
+    }
+
+    @Override
+    public void out(CharGrid grid) {
+        try {
+            write(grid);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    @Override
+    public void write(CharGrid grid) throws IOException {
+        if (!ImageIO.write(render(grid), "png", new File(filename))) {
+            throw new IOException(filename);
+        }
+    }
+
+    /**
+     * Draws a grid of chars into an image.
+     *
+     * @param grid The grid.
+     * @return An image GLYPH_SIZE pixels per cell on each side.
+     */
+    public BufferedImage render(CharGrid grid) {
+        int imageWidth = grid.getWidth() * GLYPH_SIZE;
+        BufferedImage image = new BufferedImage(imageWidth, grid.getHeight() * GLYPH_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        IntStream rows = IntStream.range(0, grid.getHeight());
+        if (parallel) {
+            rows = rows.parallel();
+        }
+        rows.forEach(row -> drawRow(grid, row, pixels, imageWidth));
+        return image;
+    }
+
+    /**
+     * Draws a row of cells into its band of the image.
+     *
+     * @param grid       The grid.
+     * @param row        The row of cells.
+     * @param pixels     The image's packed pixels.
+     * @param imageWidth The image width.
+     */
+    private static void drawRow(CharGrid grid, int row, int[] pixels, int imageWidth) {
+        char[] chars = new char[grid.getWidth()];
+        grid.getRow(row, chars, 0);
+        int bandStart = row * GLYPH_SIZE * imageWidth;
+        for (int col = 0; col < chars.length; col++) {
+            int[] tile = getGlyphTile(chars[col]);
+            int cellStart = bandStart + col * GLYPH_SIZE;
+            for (int y = 0; y < GLYPH_SIZE; y++) {
+                System.arraycopy(tile, y * GLYPH_SIZE, pixels, cellStart + y * imageWidth, GLYPH_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Gets the tile of a char's glyph, rendering it the first time.
+     *
+     * @param c The char.
+     * @return GLYPH_SIZE rows of GLYPH_SIZE packed pixels.
+     */
+    private static int[] getGlyphTile(char c) {
+        return glyphTiles.computeIfAbsent(c, key -> {
+            // CharConverter marks the cells the glyph leaves blank as true
+            boolean[][] glyph = CharConverter.convertToBoolArray(key);
+            int[] tile = new int[GLYPH_SIZE * GLYPH_SIZE];
+            for (int y = 0; y < GLYPH_SIZE; y++) {
+                for (int x = 0; x < GLYPH_SIZE; x++) {
+                    tile[y * GLYPH_SIZE + x] = glyph[y][x] ? WHITE_RGB : BLACK_RGB;
+                }
+            }
+            return tile;
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package image;
+
+/**
+ * The brightness of an image's small images at a range of resolutions, each half the one above it.
+ * Only the finest level is computed from the pixels; every other level sums each 2x2 block of
+ * small images of the level below it, in time linear in its number of small images. The sums are
+ * kept in fixed point, so a level holds exactly the brightness computed from the pixels directly.
+ */
+public final class BrightnessPyramid {
+    private final int finestResolution;
+    private final int finestTilePixels; // Number of pixels in a small image of the finest level
+    private final long[][] levelSums; // Fixed-point luminance sums by level, finest first
+
+    /**
+     * Constructs a pyramid from the luminance sums of its finest level.
+     * @param finestSums         The fixed-point luminance sum of each small image of the finest level.
+     * @param finestResolution   The resolution of the finest level.
+     * @param finestTilePixels   The number of pixels in a small image of the finest level.
+     * @param coarsestResolution The resolution of the coarsest level, finestResolution divided by a
+     *                           power of two.
+     */
+    BrightnessPyramid(long[] finestSums, int finestResolution, int finestTilePixels, int coarsestResolution) {
+        this.finestResolution = finestResolution;
+        this.finestTilePixels = finestTilePixels;
+        int levels = Integer.numberOfTrailingZeros(finestResolution / coarsestResolution) + 1;
+        levelSums = new long[levels][];
+        levelSums[0] = finestSums;
+        for (int level = 1; level < levels; level++) {
+            levelSums[level] = halve(levelSums[level - 1], finestResolution >> (level - 1));
+        }
+    }
+
+    /**
+     * Sums every 2x2 block of small images of a level into a small image of the level above it.
+     * @param sums       The luminance sums of the level.
+     * @param resolution The resolution of the level.
+     * @return The luminance sums of the level of half the resolution.
+     */
+    private static long[] halve(long[] sums, int resolution) {
+        int half = resolution / 2;
+        long[] halved = new long[half * half];
+        for (int row = 0; row < half; row++) {
+            int top = 2 * row * resolution;
+            int bottom = top + resolution;
+            for (int col = 0; col < half; col++) {
+                halved[row * half + col] = sums[top + 2 * col] + sums[top + 2 * col + 1] +
+                        sums[bottom + 2 * col] + sums[bottom + 2 * col + 1];
+            }
+        }
+        return halved;
+    }
+
+    /**
+     * Gets the brightness of the small images of a level.
+     * @param resolution The resolution of the level.
+     * @return The brightness of each small image in [0, 1], row by row.
+     * @throws IllegalArgumentException If the pyramid has no level of that resolution.
+     */
+    public double[] getBrightness(int resolution) {
+        int level = Integer.numberOfTrailingZeros(finestResolution / Math.max(1, resolution));
+        if (resolution <= 0 || finestResolution >> level != resolution || level >= levelSums.length) {
+            throw new IllegalArgumentException("No level of resolution " + resolution);
+        }
+        long[] sums = levelSums[level];
+        int tilePixels = finestTilePixels << (2 * level);
+        double[] brightness = new double[sums.length];
+        for (int tile = 0; tile < sums.length; tile++) {
+            brightness[tile] = LuminanceKernel.normalize(sums[tile], tilePixels);
+        }
+        return brightness;
+    }
+}
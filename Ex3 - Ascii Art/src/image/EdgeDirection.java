@@ -0,0 +1,8 @@
+package image;
+
+/**
+ * The direction of the dominant edge crossing a small image, if it has a strong one.
+ */
+public enum EdgeDirection {
+    NONE, HORIZONTAL, BOTTOM, VERTICAL, RISING, FALLING
+}
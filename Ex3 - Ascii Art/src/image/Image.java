@@ -8,11 +8,12 @@ import java.io.IOException;
 
 /**
  * A package-private class of the package image.
+ * Pixels are kept as packed 0xRRGGBB ints in a single row-major array.
  * @author Dan Nirel
  */
 public class Image {
 
-    private final Color[][] pixelArray;
+    private final int[] rgbArray;
     private final int width;
     private final int height;
 
@@ -20,21 +21,30 @@ public class Image {
         BufferedImage im = ImageIO.read(new File(filename));
         width = im.getWidth();
         height = im.getHeight();
+        rgbArray = im.getRGB(0, 0, width, height, null, 0, width);
+    }
 
-
-        pixelArray = new Color[height][width];
+    public Image(Color[][] pixelArray, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rgbArray = new int[width * height];
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
-                pixelArray[i][j]=new Color(im.getRGB(j, i));
+                rgbArray[i * width + j] = pixelArray[i][j].getRGB();
             }
         }
     }
 
-    public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+    /**
+     * Constructs an image over an existing packed pixel array.
+     * @param rgbArray Row-major packed 0xRRGGBB pixels, of length width * height.
+     * @param width    The image width.
+     * @param height   The image height.
+     */
+    public Image(int[] rgbArray, int width, int height) {
+        this.rgbArray = rgbArray;
         this.width = width;
         this.height = height;
-
     }
 
     public int getWidth() {
@@ -47,18 +57,34 @@ public class Image {
 
     public Color getPixel(int x, int y) {
 
-        return pixelArray[x][y];
+        return new Color(rgbArray[x * width + y]);
     }
+
+    /**
+     * Copies a row of packed 0xRRGGBB pixels into the given buffer.
+     * @param row        The row index.
+     * @param dest       The destination buffer.
+     * @param destOffset The index in dest to copy the first pixel to.
+     */
+    public void getRgbRow(int row, int[] dest, int destOffset) {
+        System.arraycopy(rgbArray, row * width, dest, destOffset, width);
+    }
+
+    /**
+     * Copies part of a row of packed 0xRRGGBB pixels into the given buffer.
+     * @param row        The row index.
+     * @param col        The column of the first pixel to copy.
+     * @param length     The number of pixels to copy.
+     * @param dest       The destination buffer.
+     * @param destOffset The index in dest to copy the first pixel to.
+     */
+    public void getRgbRow(int row, int col, int length, int[] dest, int destOffset) {
+        System.arraycopy(rgbArray, row * width + col, dest, destOffset, length);
+    }
+
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
-                BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
-            }
-        }
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(0, 0, width, height, rgbArray, 0, width);
         File outputfile = new File(fileName+".jpeg");
         try {
             ImageIO.write(bufferedImage, "jpeg", outputfile);
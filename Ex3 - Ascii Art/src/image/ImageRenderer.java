@@ -1,76 +1,85 @@
 package image;
 
-import java.awt.*;
+import java.awt.Rectangle;
+import java.util.Arrays;
 
 /**
  * The ImageRenderer class provides methods to manipulate images, such as resizing and splitting.
  */
 public class ImageRenderer {
-    // Constants for RGB factors and max RGB value
-    private static final double RED_FACTOR = 0.2126;
-    private static final double GREEN_FACTOR = 0.7152;
-    private static final double BLUE_FACTOR = 0.0722;
-    private static final int MAX_RGB_VALUE = 255;
+    // Constant for padding color
+    private static final int WHITE_RGB = 0xFFFFFF;
 
     // Instance variables
-    private final Color[][] pixelArray; // Original pixel array
-    private Color[][] resizedPixelArray; // Resized pixel array
+    private final Image image; // Original image
+    private final LuminanceKernel kernel; // Luminance kernel for the image pixels
     private final int width; // Original image width
     private final int height; // Original image height
     private int numberOfSmallImages; // Number of small images after splitting
     private int resizeHeight; // Resized image height
     private int resizeWidth; // Resized image width
+    private int leftBoundary; // First column of the original image inside the resized one
+    private int upBoundary; // First row of the original image inside the resized one
     private int smallImgWidth; // Width of a small image
     private int smallImgHeight; // Height of a small image
+    private boolean edgeDetection; // Whether to detect edges while calculating brightness
+    private EdgeDirection[] tileEdges; // Edge direction of each small image
 
     /**
      * Constructs an ImageRenderer object with the specified image.
      * @param image The image to be rendered.
      */
     public ImageRenderer(Image image) {
+        this(image, false);
+    }
+
+    /**
+     * Constructs an ImageRenderer object with the specified image.
+     * @param image         The image to be rendered.
+     * @param linearizeSrgb Whether to compute brightness from linearized sRGB channels.
+     */
+    public ImageRenderer(Image image, boolean linearizeSrgb) {
+        this.image = image;
+        this.kernel = linearizeSrgb ? LuminanceKernel.LINEAR : LuminanceKernel.GAMMA_ENCODED;
         this.width = image.getWidth();
         this.height = image.getHeight();
-        pixelArray = new Color[height][width];
-        getPixelArray(image);
     }
 
     /**
-     * Populates the pixel array from the given image.
-     * @param image The image to extract pixels from.
+     * Sets whether calculateImageBrightness also detects the dominant edge of each small image,
+     * with a Sobel pass fused into the same row stream.
+     * @param edgeDetection true to detect edges.
      */
-    private void getPixelArray(Image image) {
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                pixelArray[i][j] = image.getPixel(i, j);
-            }
-        }
+    public void setEdgeDetection(boolean edgeDetection) {
+        this.edgeDetection = edgeDetection;
+    }
+
+    /**
+     * Gets the edge direction of each small image, as detected by the last brightness calculation.
+     * @return The edge direction of each small image, row by row, or null if edges were not detected.
+     */
+    public EdgeDirection[] getTileEdges() {
+        return tileEdges;
     }
 
     /**
      * Resizes the image to the nearest power of two.
+     * The original image is centered and the added margins are white.
      */
     public void resizeImage() {
         resizeWidth = resizeExpoTwo(width);
         resizeHeight = resizeExpoTwo(height);
-        if (width == resizeWidth && height == resizeHeight) {
-            resizedPixelArray = pixelArray;
-            return;
-        }
-        resizedPixelArray = new Color[resizeHeight][resizeWidth];
-        int leftBoundary = (resizeWidth - width) / 2;
-        int upBoundary = (resizeHeight - height) / 2;
-        int rightBoundary = leftBoundary + width;
-        int bottomBoundary = upBoundary + height;
-        // Fill resizedPixelArray with original image pixels, padding with white if necessary
-        for (int i = 0; i < resizeHeight; i++) {
-            for (int j = 0; j < resizeWidth; j++) {
-                if (j < leftBoundary || j >= rightBoundary || i < upBoundary || i >= bottomBoundary) {
-                    resizedPixelArray[i][j] = Color.WHITE;
-                } else {
-                    resizedPixelArray[i][j] = pixelArray[i - upBoundary][j - leftBoundary];
-                }
-            }
-        }
+        leftBoundary = (resizeWidth - width) / 2;
+        upBoundary = (resizeHeight - height) / 2;
+    }
+
+    /**
+     * Gets the finest resolution the resized image can be split to, with small images of at least
+     * one pixel on each side.
+     * @return The smaller of the resized image's width and height.
+     */
+    public int getMaxResolution() {
+        return Math.min(resizeWidth, resizeHeight);
     }
 
     /**
@@ -87,47 +96,151 @@ public class ImageRenderer {
     }
 
     /**
-     * Splits the resized image into small images of specified resolution.
+     * Calculates the brightness for each small image when splitting the resized image to the
+     * specified resolution. The resized image is streamed row by row, so no pixel copies are kept.
+     * Brightness is computed in fixed point, within LuminanceKernel.BRIGHTNESS_EPSILON of the exact
+     * double computation.
      * @param resolution The resolution for splitting the image.
-     * @return A 3D array containing the small images.
+     * @return An array containing the brightness value for each small image, row by row.
      */
-    public Color[][][] splitToSmallImages(int resolution) {
+    public double[] calculateImageBrightness(int resolution) {
+        long[] tileSums = calculateTileSums(resolution);
+        double[] pixelsRGB = new double[numberOfSmallImages];
+        for (int pixel = 0; pixel < numberOfSmallImages; pixel++) {
+            pixelsRGB[pixel] = LuminanceKernel.normalize(tileSums[pixel], smallImgHeight * smallImgWidth);
+        }
+        return pixelsRGB;
+    }
+
+    /**
+     * Calculates the brightness of the small images at several resolutions with a single pass over
+     * the image: the finest resolution is streamed as by calculateImageBrightness, and each coarser
+     * one is summed from the one below it. The brightness of every level is the same as
+     * calculateImageBrightness would calculate for its resolution.
+     * @param finestResolution   The finest resolution, which the image is streamed at.
+     * @param coarsestResolution The coarsest resolution, finestResolution divided by a power of two.
+     * @return The pyramid of the resolutions from finestResolution down to coarsestResolution.
+     */
+    public BrightnessPyramid calculateBrightnessPyramid(int finestResolution, int coarsestResolution) {
+        long[] tileSums = calculateTileSums(finestResolution);
+        return new BrightnessPyramid(tileSums, finestResolution, smallImgWidth * smallImgHeight,
+                coarsestResolution);
+    }
+
+    /**
+     * Calculates the fixed-point luminance sum of each small image when splitting the resized image
+     * to the specified resolution, detecting edges on the way if edge detection is on.
+     * @param resolution The resolution for splitting the image.
+     * @return The luminance sum of each small image, row by row.
+     */
+    private long[] calculateTileSums(int resolution) {
         smallImgWidth = resizeWidth / resolution;
         smallImgHeight = resizeHeight / resolution;
         numberOfSmallImages = resolution * resolution;
-        Color[][][] smallImages = new Color[numberOfSmallImages][smallImgHeight][smallImgWidth];
-        // Split the resized image into small images
+        long[] tileSums = new long[numberOfSmallImages];
+        int[] whiteRow = new int[resizeWidth];
+        Arrays.fill(whiteRow, WHITE_RGB);
+        int[] imageRow = whiteRow.clone();
+        int bottomBoundary = upBoundary + height;
+        SobelTileAccumulator sobel = edgeDetection ?
+                new SobelTileAccumulator(resizeWidth, smallImgWidth, smallImgHeight, resolution,
+                        new Rectangle(leftBoundary, upBoundary, width, height)) : null;
         for (int heightIndex = 0; heightIndex < resizeHeight; heightIndex++) {
-            for (int widthIndex = 0; widthIndex < resizeWidth; widthIndex++) {
-                smallImages[widthIndex / smallImgWidth + resolution * (heightIndex / smallImgHeight)]
-                        [heightIndex % smallImgHeight]
-                        [widthIndex % smallImgWidth] =
-                        resizedPixelArray[heightIndex][widthIndex];
+            int[] row = whiteRow;
+            if (heightIndex >= upBoundary && heightIndex < bottomBoundary) {
+                image.getRgbRow(heightIndex - upBoundary, imageRow, leftBoundary);
+                row = imageRow;
+            }
+            int tileOffset = resolution * (heightIndex / smallImgHeight);
+            if (sobel == null) {
+                kernel.accumulateRow(row, smallImgWidth, tileSums, tileOffset, resolution);
+            } else {
+                // Each pooling block is summed as a narrow tile, and the tiles are folded from the blocks
+                long[] poolSums = sobel.getPoolSums();
+                kernel.accumulateRow(row, 1 << sobel.getPoolShift(), poolSums, 0, poolSums.length);
+                sobel.addRow(tileSums, tileOffset);
             }
         }
-        return smallImages;
+        tileEdges = sobel == null ? null : sobel.classifyTiles();
+        return tileSums;
     }
 
     /**
-     * Calculates the brightness for each small image.
-     * @param smallImages The array of small images.
-     * @return An array containing the brightness value for each small image.
+     * Calculates a shape mask for each small image when splitting the resized image to the
+     * specified resolution. A small image is sampled on a gridSize by gridSize grid (a sample repeats
+     * over several grid cells if the small image is smaller than the grid), and the bit of every
+     * cell whose sample is at least as bright as the whole small image is set.
+     * @param resolution The resolution for splitting the image.
+     * @param gridSize   The side of the sampling grid, a power of two of at least 8.
+     * @return gridSize * gridSize / 64 longs for each small image, row by row, with the bits of
+     * each mask in row order.
      */
-    public double[] calculateImageBrightness(Color[][][] smallImages) {
-        double[] pixelsRGB = new double[numberOfSmallImages];
-        // Calculate brightness for each small image
-        for (int pixel = 0; pixel < numberOfSmallImages; pixel++) {
-            pixelsRGB[pixel] = 0.0;
-            for (int pixelHeight = 0; pixelHeight < smallImgHeight; pixelHeight++) {
-                for (int pixelWidth = 0; pixelWidth < smallImgWidth; pixelWidth++) {
-                    Color currPixel = smallImages[pixel][pixelHeight][pixelWidth];
-                    pixelsRGB[pixel] += currPixel.getRed() * RED_FACTOR +
-                            currPixel.getGreen() * GREEN_FACTOR +
-                            currPixel.getBlue() * BLUE_FACTOR;
+    public long[] calculateTileMasks(int resolution, int gridSize) {
+        smallImgWidth = resizeWidth / resolution;
+        smallImgHeight = resizeHeight / resolution;
+        int samplesInRow = Math.min(gridSize, smallImgWidth);
+        int samplesInCol = Math.min(gridSize, smallImgHeight);
+        int poolShift = Integer.numberOfTrailingZeros(smallImgWidth / samplesInRow);
+        int rowsPerSample = smallImgHeight / samplesInCol;
+        int maskWords = gridSize * gridSize / Long.SIZE;
+        long[] masks = new long[resolution * resolution * maskWords];
+        // Sums of the small images and of their samples, for the row of small images being streamed
+        long[] tileSums = new long[resolution];
+        long[][] sampleSums = new long[samplesInCol][resolution * samplesInRow];
+        int[] whiteRow = new int[resizeWidth];
+        Arrays.fill(whiteRow, WHITE_RGB);
+        int[] imageRow = whiteRow.clone();
+        int bottomBoundary = upBoundary + height;
+        for (int heightIndex = 0; heightIndex < resizeHeight; heightIndex++) {
+            int[] row = whiteRow;
+            if (heightIndex >= upBoundary && heightIndex < bottomBoundary) {
+                image.getRgbRow(heightIndex - upBoundary, imageRow, leftBoundary);
+                row = imageRow;
+            }
+            int rowInSmallImg = heightIndex % smallImgHeight;
+            kernel.accumulateRow(row, smallImgWidth, tileSums, 0, resolution,
+                    sampleSums[rowInSmallImg / rowsPerSample], poolShift);
+            if (rowInSmallImg == smallImgHeight - 1) {
+                int firstMaskWord = (heightIndex / smallImgHeight) * resolution * maskWords;
+                packMasks(tileSums, sampleSums, gridSize, masks, firstMaskWord);
+                Arrays.fill(tileSums, 0);
+                for (long[] sampleRow : sampleSums) {
+                    Arrays.fill(sampleRow, 0);
+                }
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Packs the shape masks of a row of small images by comparing each sample to its small image.
+     * @param tileSums      The luminance sums of the small images.
+     * @param sampleSums    The luminance sums of the samples, by sample row.
+     * @param gridSize      The side of the sampling grid.
+     * @param masks         The masks to set bits in.
+     * @param firstMaskWord The index in masks of the row's first word.
+     */
+    private void packMasks(long[] tileSums, long[][] sampleSums, int gridSize, long[] masks,
+                           int firstMaskWord) {
+        int samplesInCol = sampleSums.length;
+        int samplesInRow = sampleSums[0].length / tileSums.length;
+        double pixelsInSample = (double) (smallImgWidth / samplesInRow) * (smallImgHeight / samplesInCol);
+        double pixelsInTile = (double) smallImgWidth * smallImgHeight;
+        int maskWords = gridSize * gridSize / Long.SIZE;
+        for (int tile = 0; tile < tileSums.length; tile++) {
+            // A sample is bright when its mean is at least the tile's mean
+            double threshold = tileSums[tile] * pixelsInSample;
+            int maskOffset = firstMaskWord + tile * maskWords;
+            for (int gridRow = 0; gridRow < gridSize; gridRow++) {
+                long[] sampleRow = sampleSums[gridRow * samplesInCol / gridSize];
+                for (int gridCol = 0; gridCol < gridSize; gridCol++) {
+                    long sample = sampleRow[tile * samplesInRow + gridCol * samplesInRow / gridSize];
+                    if (sample * pixelsInTile >= threshold) {
+                        int bit = gridRow * gridSize + gridCol;
+                        masks[maskOffset + bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+                    }
                 }
             }
-            pixelsRGB[pixel] /= (MAX_RGB_VALUE * smallImgHeight * smallImgWidth);
         }
-        return pixelsRGB;
     }
 }
@@ -0,0 +1,150 @@
+package image;
+
+/**
+ * Row kernel for accumulating the luminance of packed 0xRRGGBB pixels into tile sums.
+ * Luminance is computed in fixed point: each channel value is looked up in a 256-entry table
+ * holding factor * value * 2^FIXED_POINT_SHIFT, so the per-pixel loop is only table lookups
+ * and integer adds, accumulated in a long per tile.
+ * Every table entry is rounded to the nearest integer, so a pixel's luminance is off by at most
+ * 1.5 / 2^FIXED_POINT_SHIFT out of MAX_RGB_VALUE, and a normalized tile brightness is within
+ * BRIGHTNESS_EPSILON of the exact double computation.
+ */
+final class LuminanceKernel {
+    /**
+     * Number of fractional bits in the fixed-point luminance values.
+     */
+    static final int FIXED_POINT_SHIFT = 16;
+    /**
+     * Upper bound on the difference between a normalized tile brightness computed by this kernel
+     * and the one computed with double arithmetic (1.5 / (2^16 * 255) rounded up).
+     */
+    static final double BRIGHTNESS_EPSILON = 1e-7;
+    /**
+     * Kernel for gamma encoded luminance, matching the factors used so far.
+     */
+    static final LuminanceKernel GAMMA_ENCODED = new LuminanceKernel(false);
+    /**
+     * Kernel that linearizes the sRGB channels before weighting them.
+     */
+    static final LuminanceKernel LINEAR = new LuminanceKernel(true);
+
+    // Constants for RGB factors and sRGB transfer function
+    private static final double RED_FACTOR = 0.2126;
+    private static final double GREEN_FACTOR = 0.7152;
+    private static final double BLUE_FACTOR = 0.0722;
+    private static final int MAX_RGB_VALUE = 255;
+    private static final double SRGB_LINEAR_LIMIT = 0.04045;
+    private static final double SRGB_LINEAR_SLOPE = 12.92;
+    private static final double SRGB_OFFSET = 0.055;
+    private static final double SRGB_GAMMA = 2.4;
+    private static final int CHANNEL_MASK = 0xFF;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+
+    // Per-channel fixed-point luminance tables
+    private final int[] redTable;
+    private final int[] greenTable;
+    private final int[] blueTable;
+
+    private LuminanceKernel(boolean linearize) {
+        redTable = buildTable(RED_FACTOR, linearize);
+        greenTable = buildTable(GREEN_FACTOR, linearize);
+        blueTable = buildTable(BLUE_FACTOR, linearize);
+    }
+
+    /**
+     * Builds the fixed-point luminance table of a channel.
+     * @param factor    The luminance factor of the channel.
+     * @param linearize Whether to linearize the sRGB channel value first.
+     * @return The table, indexed by the channel value.
+     */
+    private static int[] buildTable(double factor, boolean linearize) {
+        int[] table = new int[MAX_RGB_VALUE + 1];
+        for (int value = 0; value <= MAX_RGB_VALUE; value++) {
+            double channel = linearize ? linearize(value) : value;
+            table[value] = (int) Math.round(factor * channel * (1 << FIXED_POINT_SHIFT));
+        }
+        return table;
+    }
+
+    /**
+     * Converts a gamma encoded sRGB channel value to linear light, on the same 0-255 scale.
+     * @param value The sRGB channel value.
+     * @return The linear channel value.
+     */
+    private static double linearize(int value) {
+        double channel = (double) value / MAX_RGB_VALUE;
+        if (channel <= SRGB_LINEAR_LIMIT) {
+            return channel / SRGB_LINEAR_SLOPE * MAX_RGB_VALUE;
+        }
+        return Math.pow((channel + SRGB_OFFSET) / (1 + SRGB_OFFSET), SRGB_GAMMA) * MAX_RGB_VALUE;
+    }
+
+    /**
+     * Adds the luminance of a row of pixels to the sums of the tiles the row passes through.
+     * @param row        Packed pixels, tilesInRow * tileWidth of them.
+     * @param tileWidth  The width of a tile in pixels.
+     * @param tileSums   The fixed-point tile sums to add to.
+     * @param tileOffset The index in tileSums of the row's first tile.
+     * @param tilesInRow The number of tiles the row passes through.
+     */
+    void accumulateRow(int[] row, int tileWidth, long[] tileSums, int tileOffset, int tilesInRow) {
+        int pixel = 0;
+        for (int tile = 0; tile < tilesInRow; tile++) {
+            long sum = 0;
+            int tileEnd = pixel + tileWidth;
+            for (; pixel < tileEnd; pixel++) {
+                int rgb = row[pixel];
+                sum += redTable[(rgb >> RED_SHIFT) & CHANNEL_MASK] +
+                        greenTable[(rgb >> GREEN_SHIFT) & CHANNEL_MASK] +
+                        blueTable[rgb & CHANNEL_MASK];
+            }
+            tileSums[tileOffset + tile] += sum;
+        }
+    }
+
+    /**
+     * Adds the luminance of a row of pixels to the sums of the tiles the row passes through,
+     * and also to the sum of each pixel's pooling block: a run of 2^poolShift pixels inside a tile.
+     * @param row        Packed pixels, tilesInRow * tileWidth of them.
+     * @param tileWidth  The width of a tile in pixels, a multiple of 2^poolShift.
+     * @param tileSums   The fixed-point tile sums to add to.
+     * @param tileOffset The index in tileSums of the row's first tile.
+     * @param tilesInRow The number of tiles the row passes through.
+     * @param poolSums   The fixed-point pooling block sums to add to.
+     * @param poolShift  Log2 of the number of pixels in a pooling block.
+     */
+    void accumulateRow(int[] row, int tileWidth, long[] tileSums, int tileOffset, int tilesInRow,
+                       long[] poolSums, int poolShift) {
+        int pixel = 0;
+        int block = 0;
+        int poolSide = 1 << poolShift;
+        for (int tile = 0; tile < tilesInRow; tile++) {
+            long sum = 0;
+            int tileEnd = pixel + tileWidth;
+            while (pixel < tileEnd) {
+                long blockSum = 0;
+                int blockEnd = pixel + poolSide;
+                for (; pixel < blockEnd; pixel++) {
+                    int rgb = row[pixel];
+                    blockSum += redTable[(rgb >> RED_SHIFT) & CHANNEL_MASK] +
+                            greenTable[(rgb >> GREEN_SHIFT) & CHANNEL_MASK] +
+                            blueTable[rgb & CHANNEL_MASK];
+                }
+                poolSums[block++] += blockSum;
+                sum += blockSum;
+            }
+            tileSums[tileOffset + tile] += sum;
+        }
+    }
+
+    /**
+     * Converts a fixed-point tile sum to a brightness in [0, 1].
+     * @param tileSum      The fixed-point luminance sum of the tile.
+     * @param pixelsInTile The number of pixels in the tile.
+     * @return The normalized brightness of the tile.
+     */
+    static double normalize(long tileSum, int pixelsInTile) {
+        return tileSum / ((double) MAX_RGB_VALUE * pixelsInTile * (1 << FIXED_POINT_SHIFT));
+    }
+}
@@ -0,0 +1,213 @@
+package image;
+
+import java.awt.Rectangle;
+
+/**
+ * Accumulates Sobel gradients of a luminance plane into per-tile structure tensors, fed one
+ * luminance row at a time so only three rows are kept, and classifies the dominant edge of each tile.
+ * The plane is first average-pooled so that a tile spans about SAMPLES_PER_TILE Sobel samples per side,
+ * but with blocks of at least MIN_POOL_SIDE pixels, so small tiles take their gradients from their
+ * neighbours. Pooling keeps thin lines (at a lower contrast) while the gradients cost a fraction of
+ * a full resolution pass. The tiles' luminance sums are folded from the pooling blocks' sums, so the
+ * luminance of each pixel is summed only once, into its block. The white margins around the image
+ * have no gradients, so only the samples next to the image are passed through the Sobel kernels.
+ */
+final class SobelTileAccumulator {
+    // Number of pooled samples per tile side the Sobel pass aims for, and the smallest pooling block side
+    private static final int SAMPLES_PER_TILE = 4;
+    private static final int MIN_POOL_SIDE = 8;
+    // Largest Sobel response of a 0-255 luminance plane, and the thresholds relative to it
+    private static final double MAX_SOBEL_RESPONSE = 4 * 255;
+    private static final double EDGE_STRENGTH_THRESHOLD = 0.25;
+    private static final double COHERENCE_THRESHOLD = 0.8;
+    private static final double BOTTOM_ENERGY_RATIO = 0.75;
+
+    private final int poolShift; // Log2 of the side of a pooling block
+    private final int width; // Width of the pooled plane
+    private final int tileWidth; // Width of a tile in the pooled plane
+    private final int tileWidthShift; // Log2 of the width of a tile in the pooled plane
+    private final int tileHeight; // Height of a tile in the pooled plane
+    private final int tilesInRow; // Number of tiles in a row
+    private final int firstColumn; // First pooled column whose gradients may be nonzero
+    private final int endColumn; // Pooled column after the last one whose gradients may be nonzero
+    private final int firstRow; // First pooled row whose gradients may be nonzero
+    private final int endRow; // Pooled row after the last one whose gradients may be nonzero
+    private final long[] poolSums; // Fixed-point luminance sums of the pooling blocks of the current rows
+    private int rowsInPool; // Number of full resolution rows added to poolSums
+    private final long[] gradientXX; // Per tile sum of gx * gx
+    private final long[] gradientYY; // Per tile sum of gy * gy
+    private final long[] gradientXY; // Per tile sum of gx * gy
+    private final long[] lowerHalfEnergy; // Per tile sum of gx * gx + gy * gy in its lower half
+    private int[] above; // Luminance row above the one being processed
+    private int[] center; // Luminance row being processed
+    private int[] below; // Luminance row below the one being processed
+    private final int[] smoothed; // Vertically smoothed center row, above + 2 * center + below
+    private final int[] difference; // Vertical difference at the center row, below - above
+    private int rowsAdded; // Number of pooled rows added so far
+
+    /**
+     * Constructs an accumulator for a luminance plane split to tiles.
+     * @param width      The width of the luminance plane.
+     * @param tileWidth  The width of a tile, a power of two.
+     * @param tileHeight The height of a tile, a power of two.
+     * @param tilesInRow The number of tiles in a row, and in a column.
+     * @param content    The bounds of the image in the luminance plane, the rest of it being white.
+     */
+    SobelTileAccumulator(int width, int tileWidth, int tileHeight, int tilesInRow, Rectangle content) {
+        int tileSide = Math.min(tileWidth, tileHeight);
+        int poolSide = Math.min(tileSide, Math.max(MIN_POOL_SIDE, tileSide / SAMPLES_PER_TILE));
+        this.poolShift = Integer.numberOfTrailingZeros(poolSide);
+        this.width = width >> poolShift;
+        this.tileWidth = tileWidth >> poolShift;
+        this.tileWidthShift = Integer.numberOfTrailingZeros(this.tileWidth);
+        this.tileHeight = tileHeight >> poolShift;
+        this.tilesInRow = tilesInRow;
+        // A sample has a gradient only if it or a neighbour pools some of the image
+        firstColumn = Math.max(1, (content.x >> poolShift) - 1);
+        endColumn = Math.min(this.width - 1, ((content.x + content.width - 1) >> poolShift) + 2);
+        firstRow = (content.y >> poolShift) - 1;
+        endRow = ((content.y + content.height - 1) >> poolShift) + 2;
+        poolSums = new long[this.width];
+        int tiles = tilesInRow * tilesInRow;
+        gradientXX = new long[tiles];
+        gradientYY = new long[tiles];
+        gradientXY = new long[tiles];
+        lowerHalfEnergy = new long[tiles];
+        above = new int[this.width];
+        center = new int[this.width];
+        below = new int[this.width];
+        smoothed = new int[this.width];
+        difference = new int[this.width];
+    }
+
+    /**
+     * Gets the log2 of the side of a pooling block.
+     * @return The pooling shift.
+     */
+    int getPoolShift() {
+        return poolShift;
+    }
+
+    /**
+     * Gets the pooling block sums the fixed-point luminance of the next full resolution row
+     * should be added to, before calling addRow: a block is a run of 2^poolShift pixels,
+     * so a row is added like a row of getPoolSums().length tiles of that width.
+     * @return The pooling block sums.
+     */
+    long[] getPoolSums() {
+        return poolSums;
+    }
+
+    /**
+     * Completes adding a full resolution row to the pooling block sums, and once all the rows of
+     * the pooled row were added, adds its blocks to the sums of their tiles and passes it on.
+     * @param tileSums   The fixed-point tile sums to add the blocks to.
+     * @param tileOffset The index in tileSums of the row's first tile.
+     */
+    void addRow(long[] tileSums, int tileOffset) {
+        int poolSide = 1 << poolShift;
+        if (++rowsInPool < poolSide) {
+            return;
+        }
+        for (int x = 0; x < width; x++) {
+            tileSums[tileOffset + (x >> tileWidthShift)] += poolSums[x];
+            // Average of the block, on the 0-255 scale
+            above[x] = (int) (poolSums[x] >> (LuminanceKernel.FIXED_POINT_SHIFT + 2 * poolShift));
+            poolSums[x] = 0;
+        }
+        rowsInPool = 0;
+        addPooledRow();
+    }
+
+    /**
+     * Adds the pooled row written to the above buffer, and accumulates the gradients
+     * of the row above it once it has both neighbours.
+     */
+    private void addPooledRow() {
+        int[] filled = above;
+        above = center;
+        center = below;
+        below = filled;
+        rowsAdded++;
+        if (rowsAdded >= 3) {
+            accumulateCenterRow(rowsAdded - 2);
+        }
+    }
+
+    /**
+     * Accumulates the Sobel gradients of the center row into the tensors of its tiles.
+     * The Sobel kernels are separable, so the vertical pass is done once per column and
+     * the horizontal pass reuses it for both gradients.
+     * @param row The index of the center row in the plane.
+     */
+    private void accumulateCenterRow(int row) {
+        if (row < firstRow || row >= endRow) {
+            return;
+        }
+        for (int x = firstColumn - 1; x <= endColumn; x++) {
+            smoothed[x] = above[x] + 2 * center[x] + below[x];
+            difference[x] = below[x] - above[x];
+        }
+        int tileOffset = tilesInRow * (row / tileHeight);
+        boolean lowerHalf = 2 * (row % tileHeight) >= tileHeight;
+        int lastTile = (endColumn - 1) >> tileWidthShift;
+        for (int tile = firstColumn >> tileWidthShift; tile <= lastTile; tile++) {
+            long xx = 0;
+            long yy = 0;
+            long xy = 0;
+            int start = Math.max(firstColumn, tile * tileWidth);
+            int end = Math.min(endColumn, (tile + 1) * tileWidth);
+            for (int x = start; x < end; x++) {
+                int gx = smoothed[x + 1] - smoothed[x - 1];
+                int gy = difference[x - 1] + 2 * difference[x] + difference[x + 1];
+                xx += gx * gx;
+                yy += gy * gy;
+                xy += gx * gy;
+            }
+            gradientXX[tileOffset + tile] += xx;
+            gradientYY[tileOffset + tile] += yy;
+            gradientXY[tileOffset + tile] += xy;
+            if (lowerHalf) {
+                lowerHalfEnergy[tileOffset + tile] += xx + yy;
+            }
+        }
+    }
+
+    /**
+     * Classifies the dominant edge of every tile. A tile has an edge when its mean gradient is
+     * strong and mostly in a single orientation. The orientation is binned to the nearest of vertical,
+     * horizontal and the two diagonals by comparing the tensor's terms, instead of computing its angle:
+     * twice the gradient angle is within 45 degrees of 0 when 2 * |xy| <= xx - yy, and within 45
+     * degrees of 180 when 2 * |xy| <= yy - xx.
+     * @return The edge direction of each tile, row by row.
+     */
+    EdgeDirection[] classifyTiles() {
+        EdgeDirection[] directions = new EdgeDirection[gradientXX.length];
+        double minEnergy = Math.pow(EDGE_STRENGTH_THRESHOLD * MAX_SOBEL_RESPONSE, 2) *
+                tileWidth * tileHeight;
+        for (int tile = 0; tile < directions.length; tile++) {
+            double xx = gradientXX[tile];
+            double yy = gradientYY[tile];
+            double xy = gradientXY[tile];
+            double energy = xx + yy;
+            double anisotropy = (xx - yy) * (xx - yy) + 4 * xy * xy;
+            if (energy < minEnergy || anisotropy < Math.pow(COHERENCE_THRESHOLD * energy, 2)) {
+                directions[tile] = EdgeDirection.NONE;
+                continue;
+            }
+            // The gradient is perpendicular to the edge, with y pointing down
+            double twiceXy = 2 * Math.abs(xy);
+            if (twiceXy <= xx - yy) {
+                directions[tile] = EdgeDirection.VERTICAL;
+            } else if (twiceXy <= yy - xx) {
+                directions[tile] = lowerHalfEnergy[tile] >= BOTTOM_ENERGY_RATIO * energy ?
+                        EdgeDirection.BOTTOM : EdgeDirection.HORIZONTAL;
+            } else if (xy > 0) {
+                directions[tile] = EdgeDirection.RISING;
+            } else {
+                directions[tile] = EdgeDirection.FALLING;
+            }
+        }
+        return directions;
+    }
+}
@@ -0,0 +1,158 @@
+package image;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Computes and caches the brightness of square tiles of an image, for rendering a viewport of it.
+ * Tiles lie on a grid anchored at an origin, tile (col, row) covering the tileSide by tileSide pixels
+ * from (originX + col * tileSide, originY + row * tileSide), with the pixels outside the image white.
+ * The origin is within the first tile of the image, so any viewport whose corner is on the grid
+ * starts at a whole tile. Only the tiles a viewport asks for are computed, reading only the pixels
+ * under them, and they are kept so panning over the same grid computes just the tiles newly in view.
+ */
+public final class TileBrightnessCache {
+    // Side of the square blocks of tiles the cache is kept in
+    private static final int BLOCK_SIDE = 32;
+    private static final int WHITE_RGB = 0xFFFFFF;
+
+    private final Image image;
+    private final int tileSide;
+    private final int originX;
+    private final int originY;
+    private final LuminanceKernel kernel;
+    private final HashMap<Long, double[]> blocks; // Tile brightness by block, NaN until computed
+
+    /**
+     * Constructs an empty cache of an image's tiles.
+     * @param image    The image.
+     * @param tileSide The side of a tile in pixels.
+     * @param originX  The left column of tile column 0, in [0, tileSide).
+     * @param originY  The top row of tile row 0, in [0, tileSide).
+     */
+    public TileBrightnessCache(Image image, int tileSide, int originX, int originY) {
+        this.image = image;
+        this.tileSide = tileSide;
+        this.originX = originX;
+        this.originY = originY;
+        this.kernel = LuminanceKernel.GAMMA_ENCODED;
+        this.blocks = new HashMap<Long, double[]>();
+    }
+
+    /**
+     * Gets the image the tiles are of.
+     * @return The image.
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the side of a tile.
+     * @return The side of a tile in pixels.
+     */
+    public int getTileSide() {
+        return tileSide;
+    }
+
+    /**
+     * Gets the left column of the grid.
+     * @return The left column of tile column 0, in pixels.
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * Gets the top row of the grid.
+     * @return The top row of tile row 0, in pixels.
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Gets the brightness of a rectangle of tiles, computing the ones not cached yet.
+     * @param firstCol The column of the rectangle's first tile, at least 0.
+     * @param firstRow The row of the rectangle's first tile, at least 0.
+     * @param cols     The number of tiles in a row of the rectangle.
+     * @param rows     The number of tiles in a column of the rectangle.
+     * @return The brightness of each tile in [0, 1], row by row.
+     */
+    public double[] getBrightness(int firstCol, int firstRow, int cols, int rows) {
+        double[] brightness = new double[cols * rows];
+        for (int row = 0; row < rows; row++) {
+            int tileRow = firstRow + row;
+            int col = 0;
+            while (col < cols) {
+                if (!Double.isNaN(getCached(firstCol + col, tileRow))) {
+                    col++;
+                    continue;
+                }
+                // Compute the whole run of missing tiles in one pass over its pixel rows
+                int missingStart = col;
+                while (col < cols && Double.isNaN(getCached(firstCol + col, tileRow))) {
+                    col++;
+                }
+                computeRun(firstCol + missingStart, tileRow, col - missingStart);
+            }
+            for (col = 0; col < cols; col++) {
+                brightness[row * cols + col] = getCached(firstCol + col, tileRow);
+            }
+        }
+        return brightness;
+    }
+
+    /**
+     * Computes the brightness of a run of tiles in a row, and caches it.
+     * @param firstCol The column of the first tile of the run.
+     * @param tileRow  The row of the tiles.
+     * @param length   The number of tiles in the run.
+     */
+    private void computeRun(int firstCol, int tileRow, int length) {
+        long[] tileSums = new long[length];
+        int[] row = new int[length * tileSide];
+        int runStart = originX + firstCol * tileSide;
+        // The part of the run's pixel columns inside the image
+        int imageStart = Math.min(runStart, image.getWidth());
+        int imageEnd = Math.min(runStart + row.length, image.getWidth());
+        int top = originY + tileRow * tileSide;
+        for (int y = top; y < top + tileSide; y++) {
+            Arrays.fill(row, WHITE_RGB);
+            if (y < image.getHeight() && imageEnd > imageStart) {
+                image.getRgbRow(y, imageStart, imageEnd - imageStart, row, imageStart - runStart);
+            }
+            kernel.accumulateRow(row, tileSide, tileSums, 0, length);
+        }
+        for (int i = 0; i < length; i++) {
+            int col = firstCol + i;
+            getBlock(col, tileRow)[(tileRow % BLOCK_SIDE) * BLOCK_SIDE + col % BLOCK_SIDE] =
+                    LuminanceKernel.normalize(tileSums[i], tileSide * tileSide);
+        }
+    }
+
+    /**
+     * Gets the cached brightness of a tile.
+     * @param col The column of the tile.
+     * @param row The row of the tile.
+     * @return The brightness, or NaN if it was not computed yet.
+     */
+    private double getCached(int col, int row) {
+        return getBlock(col, row)[(row % BLOCK_SIDE) * BLOCK_SIDE + col % BLOCK_SIDE];
+    }
+
+    /**
+     * Gets the block holding a tile, creating it if needed.
+     * @param col The column of the tile.
+     * @param row The row of the tile.
+     * @return The block.
+     */
+    private double[] getBlock(int col, int row) {
+        long key = ((long) (row / BLOCK_SIDE) << Integer.SIZE) | (col / BLOCK_SIDE);
+        return blocks.computeIfAbsent(key, k -> {
+            double[] block = new double[BLOCK_SIDE * BLOCK_SIDE];
+            Arrays.fill(block, Double.NaN);
+            return block;
+        });
+    }
+}
@@ -0,0 +1,248 @@
+package image_char_matching;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable, compiled view of a SubImgCharMatcher's character set.
+ * The set is flattened into sorted primitive arrays, so any number of threads may match
+ * against a snapshot without locking while the matcher it came from keeps changing.
+ * A snapshot can be written to a stream and read back as is, without rendering any glyph.
+ */
+public final class CharMatcherSnapshot {
+    // Marks the start of a written snapshot, "ACS" and a format version
+    private static final int FORMAT_MAGIC = 0x41435301;
+    private static final String WRONG_FORMAT_MSG = "Not a compiled charset.";
+    // Bytes of the header, of a character with its brightness, and of a brightness level
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int CHAR_BYTES = Character.BYTES + Double.BYTES +
+            SubImgCharMatcher.SHAPE_MASK_WORDS * Long.BYTES;
+    private static final int LEVEL_BYTES = Double.BYTES + Character.BYTES;
+
+    // Characters of the set in ascending order, with their brightness and packed shape masks
+    private final char[] chars;
+    private final double[] charBrightnesses;
+    private final long[] shapeMasks;
+    // Distinct brightness levels in ascending order, each with the lowest character of that brightness
+    private final double[] levels;
+    private final char[] levelChars;
+
+    /**
+     * Constructs a snapshot over arrays no one else holds.
+     *
+     * @param chars            The characters of the set, in ascending order.
+     * @param charBrightnesses The brightness of each character.
+     * @param shapeMasks       The shape mask of each character, SHAPE_MASK_WORDS longs each.
+     * @param levels           The distinct brightness levels, in ascending order.
+     * @param levelChars       The lowest character of each brightness level.
+     */
+    CharMatcherSnapshot(char[] chars, double[] charBrightnesses, long[] shapeMasks,
+                        double[] levels, char[] levelChars) {
+        this.chars = chars;
+        this.charBrightnesses = charBrightnesses;
+        this.shapeMasks = shapeMasks;
+        this.levels = levels;
+        this.levelChars = levelChars;
+    }
+
+    /**
+     * Reads a snapshot written by writeTo. The stream is not trusted: the counts it holds are checked
+     * against its length before anything is allocated, and the characters and brightness levels
+     * against the order and ranges matching relies on.
+     *
+     * @param in     The stream to read from.
+     * @param length The number of bytes in the stream.
+     * @return The snapshot.
+     * @throws IOException If the stream could not be read or does not hold a valid snapshot.
+     */
+    public static CharMatcherSnapshot readFrom(DataInputStream in, long length) throws IOException {
+        if (length < HEADER_BYTES + Integer.BYTES || in.readInt() != FORMAT_MAGIC) {
+            throw new IOException(WRONG_FORMAT_MSG);
+        }
+        int size = in.readInt();
+        // A set holds distinct characters, so there are at most as many as char values
+        if (size < 0 || size > Character.MAX_VALUE + 1 ||
+                HEADER_BYTES + (long) size * CHAR_BYTES + Integer.BYTES > length) {
+            throw new IOException(WRONG_FORMAT_MSG);
+        }
+        char[] chars = new char[size];
+        double[] charBrightnesses = new double[size];
+        long[] shapeMasks = new long[size * SubImgCharMatcher.SHAPE_MASK_WORDS];
+        for (int i = 0; i < size; i++) {
+            chars[i] = in.readChar();
+            charBrightnesses[i] = in.readDouble();
+            if ((i > 0 && chars[i] <= chars[i - 1]) || !isBrightness(charBrightnesses[i])) {
+                throw new IOException(WRONG_FORMAT_MSG);
+            }
+        }
+        for (int i = 0; i < shapeMasks.length; i++) {
+            shapeMasks[i] = in.readLong();
+        }
+        int levelCount = in.readInt();
+        // Every character has one of the levels, and every level has a character
+        if (levelCount < Math.min(size, 1) || levelCount > size ||
+                HEADER_BYTES + (long) size * CHAR_BYTES + Integer.BYTES +
+                        (long) levelCount * LEVEL_BYTES != length) {
+            throw new IOException(WRONG_FORMAT_MSG);
+        }
+        double[] levels = new double[levelCount];
+        char[] levelChars = new char[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = in.readDouble();
+            levelChars[i] = in.readChar();
+            if ((i > 0 && levels[i] <= levels[i - 1]) || Arrays.binarySearch(chars, levelChars[i]) < 0) {
+                throw new IOException(WRONG_FORMAT_MSG);
+            }
+        }
+        return new CharMatcherSnapshot(chars, charBrightnesses, shapeMasks, levels, levelChars);
+    }
+
+    /**
+     * Checks that a value read as a glyph brightness is one.
+     *
+     * @param value The value read.
+     * @return true if the value is in [0, 1].
+     */
+    private static boolean isBrightness(double value) {
+        return value >= 0 && value <= 1;
+    }
+
+    /**
+     * Writes the snapshot, so readFrom can restore it.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream could not be written.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_MAGIC);
+        out.writeInt(chars.length);
+        for (int i = 0; i < chars.length; i++) {
+            out.writeChar(chars[i]);
+            out.writeDouble(charBrightnesses[i]);
+        }
+        for (long word : shapeMasks) {
+            out.writeLong(word);
+        }
+        out.writeInt(levels.length);
+        for (int i = 0; i < levels.length; i++) {
+            out.writeDouble(levels[i]);
+            out.writeChar(levelChars[i]);
+        }
+    }
+
+    /**
+     * Gets the characters of the set.
+     *
+     * @return A copy of the characters, in ascending order.
+     */
+    public char[] getChars() {
+        return chars.clone();
+    }
+
+    /**
+     * Gets the brightness of each character, matching getChars. The array is shared, not copied.
+     *
+     * @return The character brightnesses.
+     */
+    double[] getCharBrightnesses() {
+        return charBrightnesses;
+    }
+
+    /**
+     * Gets the shape mask of each character, matching getChars. The array is shared, not copied.
+     *
+     * @return The shape masks, SHAPE_MASK_WORDS longs each.
+     */
+    long[] getShapeMasks() {
+        return shapeMasks;
+    }
+
+    /**
+     * Gets the character corresponding to the provided image brightness.
+     * The brightness is matched against the characters' brightnesses normalized to [0, 1],
+     * by scaling it to the characters' range.
+     *
+     * @param brightness The brightness level of the image.
+     * @return The character matching the brightness level.
+     */
+    public char getCharByImageBrightness(double brightness) {
+        double minBrightness = levels[0];
+        double maxBrightness = levels[levels.length - 1];
+        double charBrightness = minBrightness + brightness * (maxBrightness - minBrightness);
+        int index = Arrays.binarySearch(levels, charBrightness);
+        if (index >= 0) {
+            return levelChars[index];
+        }
+        int ceiling = -index - 1;
+        int floor = ceiling - 1;
+        if (ceiling == levels.length) {
+            return levelChars[floor];
+        }
+        if (floor < 0) {
+            return levelChars[ceiling];
+        }
+        if (charBrightness - levels[floor] <= levels[ceiling] - charBrightness) {
+            return levelChars[floor];
+        } else {
+            return levelChars[ceiling];
+        }
+    }
+
+    /**
+     * Gets the character whose glyph shape is closest to a tile's shape mask, that is the one with
+     * the fewest grid cells where one is bright and the other is not.
+     *
+     * @param tileMasks Shape masks of tiles, SHAPE_MASK_WORDS longs each, bright cells set.
+     * @param offset    The index in tileMasks of the tile's first word.
+     * @return The character with the closest glyph shape, the lowest one on ties.
+     */
+    public char getCharByShape(long[] tileMasks, int offset) {
+        char bestChar = chars[0];
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0, glyph = 0; i < chars.length; i++) {
+            int distance = 0;
+            for (int word = 0; word < SubImgCharMatcher.SHAPE_MASK_WORDS; word++, glyph++) {
+                distance += Long.bitCount(shapeMasks[glyph] ^ tileMasks[offset + word]);
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestChar = chars[i];
+            }
+        }
+        return bestChar;
+    }
+
+    /**
+     * Gets the normalized brightness of a character in the set, on the same scale
+     * getCharByImageBrightness matches image brightness against.
+     *
+     * @param c A character in the set.
+     * @return The normalized brightness of the character.
+     */
+    public double getCharNormedBrightness(char c) {
+        double minBrightness = levels[0];
+        double maxBrightness = levels[levels.length - 1];
+        return (charBrightnesses[Arrays.binarySearch(chars, c)] - minBrightness) /
+                (maxBrightness - minBrightness);
+    }
+
+    /**
+     * Gets the character set as a string.
+     *
+     * @return The character set as a string.
+     */
+    public String getCharsetAsString() {
+        String charString = Arrays.toString(chars);
+        return charString.substring(1, charString.length() - 1).replace(",", "");
+    }
+
+    /**
+     * Gets the size of the character set.
+     * @return The size of the character set.
+     */
+    public int getCharsetSize() {
+        return chars.length;
+    }
+}
@@ -0,0 +1,107 @@
+package image_char_matching;
+
+/**
+ * Encodes a block of sub-cell brightness values into a single Unicode char, so every char of the
+ * ASCII art shows several dots of the image instead of one.
+ * Each sub-cell is inked when its brightness is below its own threshold, taken from a 4x4 ordered
+ * dithering (Bayer) matrix at the sub-cell's position in the whole plane, so areas of any brightness
+ * are drawn with a matching share of inked sub-cells. The inked sub-cells are packed into a bit
+ * pattern, which indexes the glyph drawing exactly those sub-cells.
+ */
+public final class SubCellEncoder {
+    /**
+     * Braille patterns, 2 sub-cells wide and 4 high.
+     */
+    public static final SubCellEncoder BRAILLE = new SubCellEncoder(2, 4,
+            // The bit of each dot, row by row, as numbered by Unicode
+            new int[]{0x01, 0x08, 0x02, 0x10, 0x04, 0x20, 0x40, 0x80}, brailleGlyphs());
+    /**
+     * Half blocks, 1 sub-cell wide and 2 high.
+     */
+    public static final SubCellEncoder HALF_BLOCK = new SubCellEncoder(1, 2,
+            new int[]{0x01, 0x02}, new char[]{' ', '\u2580', '\u2584', '\u2588'});
+
+    private static final char BRAILLE_BLANK = '\u2800';
+    private static final int BRAILLE_PATTERNS = 256;
+    private static final int BAYER_SIZE = 4;
+    // Bayer matrix ranks, each threshold (rank + 0.5) / 16
+    private static final int[] BAYER_RANKS = {
+            0, 8, 2, 10,
+            12, 4, 14, 6,
+            3, 11, 1, 9,
+            15, 7, 13, 5};
+
+    private final int subColumns;
+    private final int subRows;
+    private final int[] subCellBits; // Bit of each sub-cell of a block, row by row
+    private final char[] glyphs; // Glyph of each bit pattern, in ascending order
+
+    private SubCellEncoder(int subColumns, int subRows, int[] subCellBits, char[] glyphs) {
+        this.subColumns = subColumns;
+        this.subRows = subRows;
+        this.subCellBits = subCellBits;
+        this.glyphs = glyphs;
+    }
+
+    /**
+     * Builds the Braille glyph of every dot pattern.
+     * @return The glyphs, indexed by pattern.
+     */
+    private static char[] brailleGlyphs() {
+        char[] glyphs = new char[BRAILLE_PATTERNS];
+        for (int pattern = 0; pattern < BRAILLE_PATTERNS; pattern++) {
+            glyphs[pattern] = (char) (BRAILLE_BLANK | pattern);
+        }
+        return glyphs;
+    }
+
+    /**
+     * Gets the number of sub-cells in a row of a block.
+     * @return The block width in sub-cells.
+     */
+    public int getSubColumns() {
+        return subColumns;
+    }
+
+    /**
+     * Gets the number of sub-cells in a column of a block.
+     * @return The block height in sub-cells.
+     */
+    public int getSubRows() {
+        return subRows;
+    }
+
+    /**
+     * Gets all the chars blocks are encoded into.
+     * @return The distinct chars, in ascending order.
+     */
+    public char[] getGlyphs() {
+        return glyphs.clone();
+    }
+
+    /**
+     * Encodes a block of a brightness plane.
+     * @param plane      The brightness of each sub-cell in [0, 1], row by row.
+     * @param planeWidth The number of sub-cells in a row of the plane.
+     * @param col        The column of the block, in blocks.
+     * @param row        The row of the block, in blocks.
+     * @return The char drawing the block's inked sub-cells.
+     */
+    public char encode(double[] plane, int planeWidth, int col, int row) {
+        int pattern = 0;
+        int firstX = col * subColumns;
+        int firstY = row * subRows;
+        for (int y = 0; y < subRows; y++) {
+            int bayerRow = ((firstY + y) % BAYER_SIZE) * BAYER_SIZE;
+            int planeRow = (firstY + y) * planeWidth;
+            for (int x = 0; x < subColumns; x++) {
+                double threshold = (BAYER_RANKS[bayerRow + (firstX + x) % BAYER_SIZE] + 0.5) /
+                        BAYER_RANKS.length;
+                if (plane[planeRow + firstX + x] < threshold) {
+                    pattern |= subCellBits[y * subColumns + x];
+                }
+            }
+        }
+        return glyphs[pattern];
+    }
+}
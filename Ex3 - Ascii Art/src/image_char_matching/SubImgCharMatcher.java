@@ -3,26 +3,41 @@
  */
 package image_char_matching;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.TreeSet;
 /**
  * Represents a character matcher used for matching image brightness to ASCII characters.
  * This class manages a character set and provides methods for adding/removing characters,
  * as well as retrieving characters based on image brightness.
+ * Every change to the set publishes a new immutable CharMatcherSnapshot. Changes are serialized,
+ * while matching goes through the current snapshot without locking, so a conversion that took
+ * a snapshot is never stalled or affected by later changes.
  */
 public class SubImgCharMatcher {
+    /**
+     * The side of the square grid glyph shapes are matched on.
+     */
+    public static final int SHAPE_GRID_SIZE = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    /**
+     * The number of longs a shape mask, one bit per grid cell in row order, is packed into.
+     */
+    public static final int SHAPE_MASK_WORDS = SHAPE_GRID_SIZE * SHAPE_GRID_SIZE / Long.SIZE;
+
     // Constants
-    private static final int INITIAL_MAX_BRIGHTNESS = 0;
-    private static final int INITIAL_MIN_BRIGHTNESS = 1;
     private final int CHAR_PIXEL_RES = 16;
 
-    // Fields
-    private double maxBrightness;
-    private double minBrightness;
+    // Fields, all but the snapshot only touched while holding the matcher's lock
     private final TreeMap<Character, Double> charBrightnessMap;
-    private final TreeMap<Double, Character> brightnessCharMap;
-    private final TreeMap<Double, Character> normedBrightnessCharMap;
-    private boolean needToNorm;
+    private final TreeMap<Double, TreeSet<Character>> brightnessCharsMap;
+    private final HashMap<Character, long[]> charShapeMap;
+    // Brightness and shape of every glyph rendered so far, never of one read from a snapshot
+    private final HashMap<Character, Double> glyphBrightnessCache;
+    private final HashMap<Character, long[]> glyphShapeCache;
+    private boolean mapsOutdated; // Whether the maps lag behind a snapshot set with setSnapshot
+    private volatile CharMatcherSnapshot snapshot;
 
     /**
      * Constructs a SubImgCharMatcher object with the provided charset.
@@ -31,15 +46,56 @@ public class SubImgCharMatcher {
      */
     public SubImgCharMatcher(char[] charset) {
         charBrightnessMap = new TreeMap<Character, Double>();
-        brightnessCharMap = new TreeMap<Double, Character>();
-        normedBrightnessCharMap = new TreeMap<Double, Character>();
-        maxBrightness = INITIAL_MAX_BRIGHTNESS;
-        minBrightness = INITIAL_MIN_BRIGHTNESS;
-        needToNorm = true;
-        for (int i = 0; i < charset.length; i++) {
-            addChar(charset[i]);
+        brightnessCharsMap = new TreeMap<Double, TreeSet<Character>>();
+        charShapeMap = new HashMap<Character, long[]>();
+        glyphBrightnessCache = new HashMap<Character, Double>();
+        glyphShapeCache = new HashMap<Character, long[]>();
+        addChars(charset);
+    }
+
+    /**
+     * Gets an immutable snapshot of the current character set. Callers that match many tiles
+     * should take a snapshot once and match against it, so the whole image sees the same set.
+     *
+     * @return The snapshot of the character set.
+     */
+    public CharMatcherSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Replaces the character set with a previously compiled one. The snapshot is published as is,
+     * and the maps later changes are made on are only rebuilt from it on the next change,
+     * so switching sets renders nothing and takes constant time.
+     *
+     * @param snapshot The compiled character set.
+     */
+    public synchronized void setSnapshot(CharMatcherSnapshot snapshot) {
+        this.snapshot = snapshot;
+        mapsOutdated = true;
+    }
+
+    /**
+     * Rebuilds the maps from the published snapshot if it was set with setSnapshot.
+     * The characters of the snapshot keep the brightness and shape it holds, so none is rendered,
+     * but the glyph caches are left alone: a snapshot may come from a file or another font, and
+     * a character removed and added again later is rendered rather than taken from it.
+     */
+    private void updateMaps() {
+        if (!mapsOutdated) {
+            return;
+        }
+        mapsOutdated = false;
+        charBrightnessMap.clear();
+        brightnessCharsMap.clear();
+        charShapeMap.clear();
+        char[] chars = snapshot.getChars();
+        double[] charBrightnesses = snapshot.getCharBrightnesses();
+        long[] shapeMasks = snapshot.getShapeMasks();
+        for (int i = 0; i < chars.length; i++) {
+            putChar(chars[i], charBrightnesses[i], Arrays.copyOfRange(shapeMasks, i * SHAPE_MASK_WORDS,
+                    (i + 1) * SHAPE_MASK_WORDS));
         }
-        normalizeBrightnessCharMap();
     }
 
     /**
@@ -49,65 +105,89 @@ public class SubImgCharMatcher {
      * @return The character matching the brightness level.
      */
     public char getCharByImageBrightness(double brightness) {
-        if (needToNorm) {
-            // Normalize everything
-            normalizeBrightnessCharMap();
-            needToNorm = false;
-        }
-        Map.Entry<Double, Character> ceilingEntry = normedBrightnessCharMap.ceilingEntry(brightness);
-        Map.Entry<Double, Character> floorEntry = normedBrightnessCharMap.floorEntry(brightness);
-        if (ceilingEntry == null) {
-            return floorEntry.getValue();
+        return snapshot.getCharByImageBrightness(brightness);
+    }
+
+    /**
+     * Gets the character whose glyph shape is closest to a tile's shape mask.
+     *
+     * @param tileMasks Shape masks of tiles, SHAPE_MASK_WORDS longs each, bright cells set.
+     * @param offset    The index in tileMasks of the tile's first word.
+     * @return The character with the closest glyph shape, the lowest one on ties.
+     */
+    public char getCharByShape(long[] tileMasks, int offset) {
+        return snapshot.getCharByShape(tileMasks, offset);
+    }
+
+    /**
+     * Gets the normalized brightness of a character in the set, on the same scale
+     * getCharByImageBrightness matches image brightness against.
+     *
+     * @param c A character in the set.
+     * @return The normalized brightness of the character.
+     */
+    public double getCharNormedBrightness(char c) {
+        return snapshot.getCharNormedBrightness(c);
+    }
+
+    /**
+     * Adds a character to the character set.
+     *
+     * @param c The character to add.
+     */
+    public synchronized void addChar(char c) {
+        if (putChar(c)) {
+            publishSnapshot();
         }
-        if (floorEntry == null) {
-            return ceilingEntry.getValue();
+    }
+
+    /**
+     * Adds characters to the character set, publishing a single snapshot for all of them.
+     *
+     * @param chars The characters to add.
+     */
+    public synchronized void addChars(char[] chars) {
+        boolean changed = false;
+        for (char c : chars) {
+            changed |= putChar(c);
         }
-        if (Math.abs(floorEntry.getKey() - brightness) <= Math.abs(ceilingEntry.getKey() - brightness)) {
-            return floorEntry.getValue();
-        } else {
-            return ceilingEntry.getValue();
+        if (changed || snapshot == null) {
+            publishSnapshot();
         }
     }
 
     /**
-     * Normalizes the brightness character map.
+     * Adds a character to the sorted maps, without publishing a snapshot.
+     * The glyph of a character is rendered only the first time it is added.
+     *
+     * @param c The character to add.
+     * @return true if the character was not in the set.
      */
-    private void normalizeBrightnessCharMap() {
-        minBrightness = brightnessCharMap.firstKey();
-        maxBrightness = brightnessCharMap.lastKey();
-        normedBrightnessCharMap.clear();
-        for (Map.Entry<Double, Character> entry : brightnessCharMap.entrySet()) {
-            normedBrightnessCharMap.put(normalizeBrightness(entry.getKey()), entry.getValue());
+    private boolean putChar(char c) {
+        updateMaps();
+        if (charBrightnessMap.containsKey(c)) return false; // If c is already in the set.
+        Double charBrightness = glyphBrightnessCache.get(c);
+        if (charBrightness == null) {
+            boolean[][] boolArray = CharConverter.convertToBoolArray(c);
+            charBrightness = convertCharToBrightness(boolArray);
+            glyphBrightnessCache.put(c, charBrightness);
+            glyphShapeCache.put(c, convertCharToShapeMask(boolArray));
         }
+        putChar(c, charBrightness, glyphShapeCache.get(c));
+        return true;
     }
 
     /**
-     * Adds a character to the character set.
+     * Adds a character not in the set to the sorted maps, with a given brightness and shape.
      *
-     * @param c The character to add.
+     * @param c              The character to add.
+     * @param charBrightness The brightness of the character.
+     * @param shapeMask      The shape mask of the character, SHAPE_MASK_WORDS longs.
      */
-    public void addChar(char c) {
-        if (charBrightnessMap.containsKey(c)) return; // If c is already in the set.
-        double charBrightness = convertCharToBrightness(c);
-        // If min or max brightness, normalize the brightnesses
-        checkMinMaxBrightness(charBrightness);
+    private void putChar(char c, double charBrightness, long[] shapeMask) {
         charBrightnessMap.put(c, charBrightness);
-        // If brightness doesn't exist then put and leave
-        if (!brightnessCharMap.containsKey(charBrightness)) {
-            brightnessCharMap.put(charBrightness, c);
-            if (!needToNorm) {
-                normedBrightnessCharMap.put(normalizeBrightness(charBrightness), c);
-            }
-        } else { // Brightness does exist already in different char.
-            char insideMapChar = brightnessCharMap.get(charBrightness);
-            // If ASCII value of c is lower than the char inside the map already then replace.
-            if (c < insideMapChar) {
-                brightnessCharMap.replace(charBrightness, c);
-                if (!needToNorm) {
-                    normedBrightnessCharMap.replace(normalizeBrightness(charBrightness), c);
-                }
-            }
-        }
+        charShapeMap.put(c, shapeMask);
+        brightnessCharsMap.computeIfAbsent(charBrightness, brightness -> new TreeSet<Character>()).add(c);
     }
 
     /**
@@ -115,80 +195,130 @@ public class SubImgCharMatcher {
      *
      * @param c The character to remove.
      */
-    public void removeChar(char c) {
-        if (!charBrightnessMap.containsKey(c)) return; // If c is not in the set.
-        // C is in the set
-        double charBrightness = convertCharToBrightness(c);
-        // Check if c changes max or min brightness.
-        if (!checkBrightnessIsMinMax(charBrightness)) {
-            normedBrightnessCharMap.remove(normalizeBrightness(charBrightness));
+    public synchronized void removeChar(char c) {
+        if (deleteChar(c)) {
+            publishSnapshot();
         }
-        charBrightnessMap.remove(c);
-        brightnessCharMap.remove(charBrightness);
-        for (Map.Entry<Character, Double> entry : charBrightnessMap.entrySet()) {
-            if (entry.getValue() == charBrightness) {
-                brightnessCharMap.put(charBrightness, c);
-                return;
-            }
-        }
-
     }
 
     /**
-     * Checks if the brightness is the minimum or maximum.
+     * Removes characters from the character set, publishing a single snapshot for all of them.
      *
-     * @param charBrightness The brightness to check.
-     * @return True if the brightness is the minimum or maximum, false otherwise.
+     * @param chars The characters to remove.
      */
-    private boolean checkBrightnessIsMinMax(double charBrightness) {
-        if (charBrightness == minBrightness || charBrightness == maxBrightness) {
-            needToNorm = true;
-            return true;
+    public synchronized void removeChars(char[] chars) {
+        boolean changed = false;
+        for (char c : chars) {
+            changed |= deleteChar(c);
+        }
+        if (changed) {
+            publishSnapshot();
         }
-        return false;
     }
 
     /**
-     * Checks if the brightness exceeds the minimum or maximum.
+     * Adds some characters to the character set and removes others, publishing a single snapshot
+     * for the whole change.
      *
-     * @param charBrightness The brightness to check.
+     * @param added   The characters to add.
+     * @param removed The characters to remove, none of them also added.
      */
-    private void checkMinMaxBrightness(double charBrightness) {
-        if (charBrightness > maxBrightness || charBrightness < minBrightness) {
-            needToNorm = true;
+    public synchronized void changeChars(char[] added, char[] removed) {
+        boolean changed = false;
+        for (char c : removed) {
+            changed |= deleteChar(c);
+        }
+        for (char c : added) {
+            changed |= putChar(c);
+        }
+        if (changed) {
+            publishSnapshot();
         }
     }
 
     /**
-     * Normalizes the brightness.
+     * Removes a character from the sorted maps, without publishing a snapshot.
      *
-     * @param charBrightness The brightness to normalize.
-     * @return The normalized brightness.
+     * @param c The character to remove.
+     * @return true if the character was in the set.
      */
-    private double normalizeBrightness(double charBrightness) {
-        return (charBrightness - minBrightness) / (maxBrightness - minBrightness);
+    private boolean deleteChar(char c) {
+        updateMaps();
+        Double charBrightness = charBrightnessMap.remove(c);
+        if (charBrightness == null) return false; // If c is not in the set.
+        charShapeMap.remove(c);
+        TreeSet<Character> sameBrightnessChars = brightnessCharsMap.get(charBrightness);
+        sameBrightnessChars.remove(c);
+        if (sameBrightnessChars.isEmpty()) {
+            brightnessCharsMap.remove(charBrightness);
+        }
+        return true;
+    }
+
+    /**
+     * Compiles the sorted maps into a new snapshot and publishes it to readers.
+     */
+    private void publishSnapshot() {
+        int size = charBrightnessMap.size();
+        char[] chars = new char[size];
+        double[] charBrightnesses = new double[size];
+        long[] shapeMasks = new long[size * SHAPE_MASK_WORDS];
+        int i = 0;
+        for (Map.Entry<Character, Double> entry : charBrightnessMap.entrySet()) {
+            chars[i] = entry.getKey();
+            charBrightnesses[i] = entry.getValue();
+            System.arraycopy(charShapeMap.get(entry.getKey()), 0, shapeMasks, i * SHAPE_MASK_WORDS,
+                    SHAPE_MASK_WORDS);
+            i++;
+        }
+        double[] levels = new double[brightnessCharsMap.size()];
+        char[] levelChars = new char[levels.length];
+        i = 0;
+        for (Map.Entry<Double, TreeSet<Character>> entry : brightnessCharsMap.entrySet()) {
+            // Characters with the same brightness are represented by the lowest one.
+            levels[i] = entry.getKey();
+            levelChars[i] = entry.getValue().first();
+            i++;
+        }
+        snapshot = new CharMatcherSnapshot(chars, charBrightnesses, shapeMasks, levels, levelChars);
     }
 
     /**
      * Converts a character to brightness.
      *
-     * @param c The character to convert.
+     * @param boolArray The character's boolean array representation.
      * @return The brightness of the character.
      */
-    private double convertCharToBrightness(char c) {
-        int trueCounter = getCharTrueCounter(c);
+    private double convertCharToBrightness(boolean[][] boolArray) {
+        int trueCounter = getCharTrueCounter(boolArray);
         return (double) trueCounter / (CHAR_PIXEL_RES * CHAR_PIXEL_RES);
     }
 
+    /**
+     * Packs a character's boolean array representation into a shape mask.
+     *
+     * @param boolArray The character's boolean array representation.
+     * @return SHAPE_MASK_WORDS longs, with the bit of every 'true' cell set, in row order.
+     */
+    private long[] convertCharToShapeMask(boolean[][] boolArray) {
+        long[] mask = new long[SHAPE_MASK_WORDS];
+        for (int i = 0; i < SHAPE_GRID_SIZE; i++) {
+            for (int j = 0; j < SHAPE_GRID_SIZE; j++) {
+                int bit = i * SHAPE_GRID_SIZE + j;
+                if (boolArray[i][j]) mask[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+            }
+        }
+        return mask;
+    }
+
     /**
      * Gets the true counter of a character.
      *
-     * @param c The character to count.
+     * @param boolArray The character's boolean array representation.
      * @return The count of 'true' values in the character's boolean array representation.
      */
-    private int getCharTrueCounter(char c) {
+    private int getCharTrueCounter(boolean[][] boolArray) {
         int trueCounter = 0;
-        boolean[][] boolArray = CharConverter.convertToBoolArray(c);
         for (int i = 0; i < CHAR_PIXEL_RES; i++) {
             for (int j = 0; j < CHAR_PIXEL_RES; j++) {
                 if (boolArray[i][j]) trueCounter++;
@@ -203,8 +333,7 @@ public class SubImgCharMatcher {
      * @return The character set as a string.
      */
     public String getCharsetAsString() {
-        String charString = charBrightnessMap.keySet().toString();
-        return charString.substring(1, charString.length() - 1).replace(",", "");
+        return snapshot.getCharsetAsString();
     }
 
     /**
@@ -212,7 +341,7 @@ public class SubImgCharMatcher {
      * @return The size of the character set.
      */
     public int getCharsetSize() {
-        return charBrightnessMap.size();
+        return snapshot.getCharsetSize();
     }
 }
 